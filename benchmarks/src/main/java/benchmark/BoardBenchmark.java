@@ -0,0 +1,104 @@
+package benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Board;
+import model.CellIndexList;
+import model.GameSession;
+
+// The model's hot paths across board sizes and mine densities:
+//
+//   placeMines      Floyd sampling from a seed, adjacency counts included
+//   placeLayout     a layout received as mine positions, i.e. the cost of
+//                   building the adjacency counts alone
+//   revealOpening   Board.revealCell from the first click. The opening is
+//                   what makes a reveal expensive, and at density 0 it is
+//                   the whole board
+//   playOpening     the same move through GameSession.reveal, which adds
+//                   the win check and, on an empty board, the end of the game
+//
+// Every reveal needs a board nobody has clicked on yet, so those two build
+// one before each call, outside the measured time.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+    private static final long SEED = 0x5EEDL;
+
+    @Param({"16", "100", "1000"})
+    public int size;
+
+    // Fraction of the cells that are mines
+    @Param({"0.0", "0.01", "0.2"})
+    public double density;
+
+    private int mines;
+    private int firstClick;
+    private List<Board.MinePosition> layout;
+
+    @Setup
+    public void setUp() {
+        mines = (int) (size * size * density);
+        firstClick = size / 2;
+        Board board = new Board(size, mines);
+        board.placeMines(SEED, firstClick, firstClick);
+        layout = board.getMinePositions();
+    }
+
+    @Benchmark
+    public Board placeMines() {
+        Board board = new Board(size, mines);
+        board.placeMines(SEED, firstClick, firstClick);
+        return board;
+    }
+
+    @Benchmark
+    public Board placeLayout() {
+        Board board = new Board(size, mines);
+        board.placeMinesFromPositions(layout);
+        return board;
+    }
+
+    @State(Scope.Thread)
+    public static class FreshBoard {
+        Board board;
+        GameSession session;
+
+        @Setup(Level.Invocation)
+        public void setUp(BoardBenchmark benchmark) {
+            board = new Board(benchmark.size, benchmark.mines);
+            board.placeMinesFromPositions(benchmark.layout);
+            session = new GameSession(1, benchmark.size, benchmark.mines, GameSession.DEFAULT_TURN_TIME);
+            session.placeMinesFromPositions(benchmark.layout);
+        }
+    }
+
+    @Benchmark
+    public int revealOpening(FreshBoard fresh) {
+        CellIndexList revealed = fresh.board.revealCell(firstClick, firstClick);
+        return revealed.size();
+    }
+
+    @Benchmark
+    public boolean playOpening(FreshBoard fresh) {
+        fresh.session.reveal(0, firstClick, firstClick);
+        return fresh.session.isGameOver();
+    }
+}
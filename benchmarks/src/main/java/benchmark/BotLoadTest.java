@@ -0,0 +1,555 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+import config.GameConfig;
+import model.RevealDelta;
+import network.GameClient;
+import network.GameMessage;
+import server.RoomServer;
+
+// Plays N headless bots against a RoomServer over loopback, each a real
+// GameClient. Bots pair up in rooms of their own and play legal moves, a
+// random cell they have not seen uncovered, as fast as the room answers
+// or after --think milliseconds. Seat 0 starts a new game whenever one
+// ends.
+//
+//   java -cp target/benchmarks.jar benchmark.BotLoadTest --bots 200 [--ramp-up 10] [--duration 60]
+//
+// Reported:
+//   setup     from opening the connection to being seated in the room
+//   moves/s   moves the room answered with what they uncovered; a move
+//             that hits a mine ends the game instead and is not counted
+//   move rtt  from sending the MOVE to getting that answer back, so it
+//             covers both sockets and the room playing the move
+//
+// The figures are taken after the ramp-up, once every bot is playing. With
+// --soak the bots play until Ctrl+C, reporting every minute with the
+// process's threads, heap after GC and open files, so anything that grows
+// with time rather than load shows up. --churn replaces every pair with a
+// fresh one after that many seconds, so connections, and the executor each
+// GameClient creates, keep being opened and closed too.
+//
+// The server can run in its own process, which keeps it from competing
+// with the bots for the CPU:
+//
+//   java -cp target/benchmarks.jar benchmark.BotLoadTest --serve 12345
+//   java -cp target/benchmarks.jar benchmark.BotLoadTest --bots 200 --port 12345
+public class BotLoadTest {
+    private static final long JOIN_TIMEOUT_MILLIS = 5000;
+
+    private final String host;
+    private final int port;
+    private final long thinkMillis;
+    private final String runId = Long.toHexString(System.nanoTime());
+    private final ScheduledExecutorService thinker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bot-think");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Histogram setup = new Histogram();
+    private final Histogram rtt = new Histogram();
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile long pairsReplaced;
+    private int nextRoom;
+
+    private BotLoadTest(String host, int port, long thinkMillis) {
+        this.host = host;
+        this.port = port;
+        this.thinkMillis = thinkMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Every connection and room is logged at INFO, and EventLog's writer
+        // thread would print it to stdout in among the report and spend CPU
+        // the bots are meant to measure. Set before anything loads EventLog;
+        // -Dminesweeper.logLevel or minesweeper.logFile still take over.
+        if (System.getProperty("minesweeper.logLevel") == null) {
+            System.setProperty("minesweeper.logLevel", "WARN");
+        }
+        int bots = 100;
+        int rampUpSeconds = 5;
+        int durationSeconds = 30;
+        boolean soak = false;
+        int reportSeconds = -1;
+        long thinkMillis = 0;
+        int churnSeconds = 0;
+        boolean virtual = false;
+        String host = "localhost";
+        int port = -1;
+        int servePort = -1;
+        int eventLoops = 2;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--bots": bots = Integer.parseInt(args[++i]); break;
+                case "--ramp-up": rampUpSeconds = Integer.parseInt(args[++i]); break;
+                case "--duration": durationSeconds = Integer.parseInt(args[++i]); break;
+                case "--soak": soak = true; break;
+                case "--report-every": reportSeconds = Integer.parseInt(args[++i]); break;
+                case "--think": thinkMillis = Long.parseLong(args[++i]); break;
+                case "--churn": churnSeconds = Integer.parseInt(args[++i]); break;
+                case "--virtual": virtual = true; break;
+                case "--host": host = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--serve": servePort = Integer.parseInt(args[++i]); break;
+                case "--event-loops": eventLoops = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+        if (reportSeconds <= 0) {
+            reportSeconds = soak ? 60 : 10;
+        }
+
+        if (servePort >= 0) {
+            RoomServer server = new RoomServer(servePort, eventLoops);
+            server.start();
+            System.out.println("Serving rooms on port " + server.getPort() + "; Ctrl+C to stop");
+            Thread.currentThread().join();
+            return;
+        }
+
+        RoomServer server = null;
+        if (port < 0) {
+            server = new RoomServer(0, eventLoops);
+            server.start();
+            port = server.getPort();
+        }
+        GameConfig.getInstance().setVirtualThreads(virtual);
+
+        PrintStream report = System.out;
+
+        BotLoadTest test = new BotLoadTest(host, port, thinkMillis);
+        report.printf("bots=%d rampUp=%ds %s think=%dms churn=%ds virtualThreads=%s server=%s:%d%n",
+            bots, rampUpSeconds, soak ? "soak" : "duration=" + durationSeconds + "s", thinkMillis, churnSeconds,
+            virtual, host, port);
+        test.run(report, (bots + 1) / 2, rampUpSeconds, soak ? -1 : durationSeconds, reportSeconds, churnSeconds);
+        if (server != null) {
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    private void run(PrintStream report, int pairCount, int rampUpSeconds, int durationSeconds, int reportSeconds,
+            int churnSeconds) throws InterruptedException {
+        List<Pair> pairs = new ArrayList<>(pairCount);
+        long rampStart = System.nanoTime();
+        for (int i = 0; i < pairCount; i++) {
+            long due = rampStart + rampUpSeconds * 1_000_000_000L * i / pairCount;
+            sleepUntil(due);
+            pairs.add(startPair());
+        }
+        long rampMillis = (System.nanoTime() - rampStart) / 1_000_000;
+        long[] setupCounts = setup.drain();
+        report.printf("ramp-up: %d bots in %d ms, setup %s%n", 2 * pairCount, rampMillis,
+            Histogram.describe(setupCounts));
+
+        // Steady state from here on
+        moves.set(0);
+        games.set(0);
+        rtt.drain();
+        Resources baseline = Resources.take();
+        long[] totalRtt = new long[Histogram.BUCKETS];
+        AtomicBoolean finished = new AtomicBoolean();
+        long start = System.nanoTime();
+        Runnable summary = () -> {
+            if (finished.compareAndSet(false, true)) {
+                Histogram.add(totalRtt, rtt.drain());
+                double seconds = (System.nanoTime() - start) / 1e9;
+                report.printf("total: %.0f s, %d moves (%.0f/s), %d games, %d pairs replaced, %d errors%n",
+                    seconds, moves.get(), moves.get() / seconds, games.get(), pairsReplaced, errors.get());
+                report.printf("  move rtt %s%n", Histogram.describe(totalRtt));
+                report.printf("  %s (at steady state %s)%n", Resources.take(), baseline);
+            }
+        };
+        Thread hook = new Thread(summary);
+        Runtime.getRuntime().addShutdownHook(hook);
+
+        long lastReport = start;
+        long lastMoves = 0;
+        while (durationSeconds < 0 || System.nanoTime() - start < durationSeconds * 1_000_000_000L) {
+            long next = lastReport + reportSeconds * 1_000_000_000L;
+            if (durationSeconds >= 0) {
+                next = Math.min(next, start + durationSeconds * 1_000_000_000L);
+            }
+            while (System.nanoTime() < next) {
+                sleepUntil(Math.min(next, System.nanoTime() + 1_000_000_000L));
+                if (churnSeconds > 0) {
+                    churn(pairs, churnSeconds);
+                }
+            }
+            long now = System.nanoTime();
+            long total = moves.get();
+            long[] interval = rtt.drain();
+            Histogram.add(totalRtt, interval);
+            report.printf("%6.0fs  %8.0f moves/s  rtt %s  %s%n", (now - start) / 1e9,
+                (total - lastMoves) * 1e9 / (now - lastReport), Histogram.describe(interval), Resources.take());
+            lastReport = now;
+            lastMoves = total;
+        }
+
+        Runtime.getRuntime().removeShutdownHook(hook);
+        summary.run();
+        for (Pair pair : pairs) {
+            pair.stop();
+        }
+    }
+
+    private void churn(List<Pair> pairs, int churnSeconds) {
+        long now = System.nanoTime();
+        for (int i = 0; i < pairs.size(); i++) {
+            Pair pair = pairs.get(i);
+            if (now - pair.startedAt >= churnSeconds * 1_000_000_000L) {
+                pair.stop();
+                pairs.set(i, startPair());
+                pairsReplaced++;
+            }
+        }
+    }
+
+    // Seats two new bots in a room of their own. Failures are counted and
+    // leave the pair idle rather than stop the run.
+    private Pair startPair() {
+        String room = "load-" + runId + "-" + nextRoom++;
+        Pair pair = new Pair(new Bot(0, room), new Bot(1, room));
+        try {
+            pair.first.join(GameMessage.MessageType.CREATE_ROOM);
+            if (pair.first.awaitSeat()) {
+                pair.second.join(GameMessage.MessageType.JOIN_ROOM);
+            }
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            System.err.println("Bot failed to connect: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return pair;
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    private static final class Pair {
+        final Bot first;
+        final Bot second;
+        final long startedAt = System.nanoTime();
+
+        Pair(Bot first, Bot second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        // Both stop playing before either leaves, so that neither takes the
+        // other's going for a lost game
+        void stop() {
+            first.stopPlaying();
+            second.stopPlaying();
+            first.leave();
+            second.leave();
+        }
+    }
+
+    // One player. Messages arrive on the client's reader thread and moves
+    // may go out from the think timer, so both go through the bot's lock.
+    private final class Bot implements GameClient.MessageHandler {
+        private final int seat;
+        private final String room;
+        private final SplittableRandom random = new SplittableRandom();
+        private final CountDownLatch seated = new CountDownLatch(1);
+        private GameClient client;
+        private long connectStart;
+        private boolean joined;
+        private boolean leaving;
+        // What the bot has seen of the board; the size is learnt from the
+        // first reveal, so the first move of all is made at (0, 0)
+        private int size = -1;
+        private boolean[] uncovered;
+        private int uncoveredCount;
+        // Counts games, so that a move still thinking when its game ended
+        // is dropped
+        private int game;
+        // When the unanswered MOVE went out, 0 if there is none
+        private long moveSentAt;
+
+        Bot(int seat, String room) {
+            this.seat = seat;
+            this.room = room;
+        }
+
+        void join(GameMessage.MessageType request) throws IOException {
+            connectStart = System.nanoTime();
+            client = new GameClient(host, port);
+            client.setMessageHandler(this);
+            client.connect(host, port);
+            client.sendMessage(new GameMessage(GameMessage.MessageType.PLAYER_JOINED, "bot-" + seat));
+            client.sendMessage(new GameMessage(request, room));
+        }
+
+        boolean awaitSeat() throws InterruptedException {
+            if (!seated.await(JOIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                errors.incrementAndGet();
+                System.err.println("Bot was not seated in " + room + " within " + JOIN_TIMEOUT_MILLIS + " ms");
+                return false;
+            }
+            return joined;
+        }
+
+        synchronized void stopPlaying() {
+            leaving = true;
+        }
+
+        synchronized void leave() {
+            if (client != null && client.isConnected()) {
+                client.sendMessage(new GameMessage(GameMessage.MessageType.DISCONNECT));
+                client.disconnect();
+            }
+        }
+
+        @Override
+        public synchronized void onMessageReceived(GameMessage message) {
+            switch (message.getType()) {
+                case ROOM_JOINED:
+                    setup.record(System.nanoTime() - connectStart);
+                    joined = true;
+                    seated.countDown();
+                    break;
+                case ROOM_ERROR:
+                    errors.incrementAndGet();
+                    System.err.println("Bot could not enter " + room + ": " + message.getText());
+                    seated.countDown();
+                    break;
+                case PLAYER_JOINED:
+                    // Both seats are taken and seat 0 moves first
+                    if (seat == 0) {
+                        newGame();
+                        move();
+                    }
+                    break;
+                case REVEAL_DELTA:
+                    see(message.getRevealDelta());
+                    if (message.isFlag()) {
+                        // The opponent's move, which hands us the turn
+                        move();
+                    } else if (moveSentAt != 0) {
+                        rtt.record(System.nanoTime() - moveSentAt);
+                        moves.incrementAndGet();
+                        moveSentAt = 0;
+                    }
+                    break;
+                case GAME_OVER:
+                    moveSentAt = 0;
+                    if (seat == 0) {
+                        games.incrementAndGet();
+                        client.sendMessage(new GameMessage(GameMessage.MessageType.RESET_REQUEST));
+                        newGame();
+                        move();
+                    }
+                    break;
+                case RESET_REQUEST:
+                    newGame();
+                    break;
+                case DISCONNECT:
+                    if (!leaving) {
+                        errors.incrementAndGet();
+                        System.err.println("Bot in " + room + " lost its game");
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void newGame() {
+            game++;
+            if (uncovered != null) {
+                uncovered = new boolean[size * size];
+            }
+            uncoveredCount = 0;
+            moveSentAt = 0;
+        }
+
+        private void see(RevealDelta delta) {
+            if (uncovered == null) {
+                size = delta.getSize();
+                uncovered = new boolean[size * size];
+            }
+            for (int i = 0; i < delta.getCellCount(); i++) {
+                int cell = delta.getCell(i);
+                if (!uncovered[cell]) {
+                    uncovered[cell] = true;
+                    uncoveredCount++;
+                }
+            }
+        }
+
+        private void move() {
+            int current = game;
+            if (thinkMillis > 0) {
+                thinker.schedule(() -> sendMove(current), thinkMillis, TimeUnit.MILLISECONDS);
+            } else {
+                sendMove(current);
+            }
+        }
+
+        private synchronized void sendMove(int forGame) {
+            if (leaving || forGame != game) {
+                return;
+            }
+            int cell = 0;
+            if (uncovered != null) {
+                if (uncoveredCount == uncovered.length) {
+                    return;
+                }
+                // A random covered cell: probe a few times, then walk on
+                // from the last probe
+                cell = random.nextInt(uncovered.length);
+                for (int i = 0; i < 8 && uncovered[cell]; i++) {
+                    cell = random.nextInt(uncovered.length);
+                }
+                while (uncovered[cell]) {
+                    cell = (cell + 1) % uncovered.length;
+                }
+            }
+            moveSentAt = System.nanoTime();
+            client.sendMessage(new GameMessage(GameMessage.MessageType.MOVE,
+                size < 0 ? 0 : cell / size, size < 0 ? 0 : cell % size, false));
+        }
+    }
+
+    // Log-linear histogram of nanosecond samples: 16 buckets per power of
+    // two, so any value is reported to within about 6%. Recording is a
+    // single atomic increment, safe from every bot's thread at once.
+    private static final class Histogram {
+        private static final int SUB_BITS = 4;
+        static final int BUCKETS = 64 << SUB_BITS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos) {
+            counts.incrementAndGet(bucket(Math.max(nanos, 0)));
+        }
+
+        // The counts so far, leaving the histogram empty
+        long[] drain() {
+            long[] copy = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] = counts.getAndSet(i, 0);
+            }
+            return copy;
+        }
+
+        static void add(long[] into, long[] counts) {
+            for (int i = 0; i < BUCKETS; i++) {
+                into[i] += counts[i];
+            }
+        }
+
+        static String describe(long[] counts) {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            if (total == 0) {
+                return "no samples";
+            }
+            return String.format("p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f ms",
+                percentile(counts, total, 50) / 1e6, percentile(counts, total, 90) / 1e6,
+                percentile(counts, total, 99) / 1e6, percentile(counts, total, 99.9) / 1e6,
+                percentile(counts, total, 100) / 1e6);
+        }
+
+        // The upper end of the bucket holding the percentile
+        private static long percentile(long[] counts, long total, double percent) {
+            long rank = Math.max(1, (long) Math.ceil(total * percent / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        private static int bucket(long value) {
+            if (value < (1 << SUB_BITS)) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+            return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+        }
+
+        private static long lowerBound(int bucket) {
+            if (bucket < (1 << SUB_BITS)) {
+                return bucket;
+            }
+            int exponent = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+            int sub = bucket & ((1 << SUB_BITS) - 1);
+            return (long) ((1 << SUB_BITS) | sub) << (exponent - SUB_BITS);
+        }
+    }
+
+    // What a leak would grow: threads, the heap left after the last
+    // collection and, on Linux, open file descriptors.
+    private static final class Resources {
+        final int threads;
+        final long heapAfterGc;
+        final long openFiles;
+
+        private Resources(int threads, long heapAfterGc, long openFiles) {
+            this.threads = threads;
+            this.heapAfterGc = heapAfterGc;
+            this.openFiles = openFiles;
+        }
+
+        static Resources take() {
+            long heap = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (pool.getType() == MemoryType.HEAP && usage != null) {
+                    heap += usage.getUsed();
+                }
+            }
+            return new Resources(ManagementFactory.getThreadMXBean().getThreadCount(), heap, openFiles());
+        }
+
+        // Linux only; -1 elsewhere
+        private static long openFiles() {
+            try (Stream<?> files = Files.list(Paths.get("/proc/self/fd"))) {
+                return files.count();
+            } catch (IOException | UnsupportedOperationException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("threads=%d heapAfterGc=%.1fMB fds=%d",
+                threads, heapAfterGc / (1024.0 * 1024.0), openFiles);
+        }
+    }
+}
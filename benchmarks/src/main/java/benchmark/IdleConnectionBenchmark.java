@@ -0,0 +1,133 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import config.GameConfig;
+import network.GameClient;
+import network.NioGameServer;
+
+// Opens N idle GameClient connections and reports how many platform threads
+// and how much memory they hold, with or without virtual threads.
+//
+//   java -cp ... benchmark.IdleConnectionBenchmark --connections 1000 [--virtual]
+//
+// Both ends of every connection need a file descriptor, so for large counts
+// run the server in its own process:
+//
+//   java -cp ... benchmark.IdleConnectionBenchmark --serve 12345
+//   java -cp ... benchmark.IdleConnectionBenchmark --connections 10000 --port 12345 [--virtual]
+public class IdleConnectionBenchmark {
+    public static void main(String[] args) throws Exception {
+        int connections = 1000;
+        boolean virtual = false;
+        String host = "localhost";
+        int port = -1;
+        int servePort = -1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--connections": connections = Integer.parseInt(args[++i]); break;
+                case "--virtual": virtual = true; break;
+                case "--host": host = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--serve": servePort = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        if (servePort >= 0) {
+            NioGameServer server = new NioGameServer(servePort, 2);
+            server.start();
+            System.out.println("Serving on port " + server.getPort() + "; Ctrl+C to stop");
+            Thread.currentThread().join();
+            return;
+        }
+
+        NioGameServer server = null;
+        if (port < 0) {
+            server = new NioGameServer(0, 2);
+            server.start();
+            port = server.getPort();
+        }
+        GameConfig.getInstance().setVirtualThreads(virtual);
+
+        // GameClient traces every connection to stdout; keep it out of the report
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Snapshot before = Snapshot.take();
+        List<GameClient> clients = new ArrayList<>(connections);
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            GameClient client = new GameClient(host, port);
+            client.connect(host, port);
+            clients.add(client);
+        }
+        long connectMillis = (System.nanoTime() - start) / 1_000_000;
+        Thread.sleep(2000); // let every reader park on its socket
+        Snapshot after = Snapshot.take();
+
+        report.printf("connections=%d virtualThreads=%s connect=%d ms%n", connections, virtual, connectMillis);
+        report.printf("  platform threads: %d -> %d (+%d)%n",
+            before.threads, after.threads, after.threads - before.threads);
+        report.printf("  heap used:        %.1f MB -> %.1f MB (+%.1f MB)%n",
+            mb(before.heapUsed), mb(after.heapUsed), mb(after.heapUsed - before.heapUsed));
+        if (before.rss > 0) {
+            report.printf("  resident set:     %.1f MB -> %.1f MB (+%.1f MB)%n",
+                mb(before.rss), mb(after.rss), mb(after.rss - before.rss));
+        }
+
+        for (GameClient client : clients) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static final class Snapshot {
+        final int threads;
+        final long heapUsed;
+        final long rss;
+
+        private Snapshot(int threads, long heapUsed, long rss) {
+            this.threads = threads;
+            this.heapUsed = heapUsed;
+            this.rss = rss;
+        }
+
+        static Snapshot take() {
+            for (int i = 0; i < 3; i++) {
+                System.gc();
+            }
+            Runtime runtime = Runtime.getRuntime();
+            return new Snapshot(ManagementFactory.getThreadMXBean().getThreadCount(),
+                runtime.totalMemory() - runtime.freeMemory(), residentSetBytes());
+        }
+
+        // Linux only; 0 elsewhere
+        private static long residentSetBytes() {
+            try {
+                for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                    if (line.startsWith("VmRSS:")) {
+                        return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // fall through
+            }
+            return 0;
+        }
+    }
+}
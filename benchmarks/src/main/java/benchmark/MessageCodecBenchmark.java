@@ -0,0 +1,102 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Board;
+import model.CellIndexList;
+import model.GameSession;
+import model.RevealDelta;
+import model.SnapshotCodec;
+import network.GameMessage;
+import network.MessageCodec;
+
+// Encoding and decoding one frame of each message whose size follows the
+// board: the mine layout, the opening of the first move and a full resync.
+// A MOVE is a handful of bytes whatever the board, so its score is the
+// codec's fixed cost per frame. Both directions work the way the servers
+// do: encode sizes the frame and writes it into a reused buffer, decode
+// reads it back out of one.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageCodecBenchmark {
+    private static final long SEED = 0x5EEDL;
+
+    @Param({"MOVE", "MINE_POSITIONS", "REVEAL_DELTA", "RESYNC"})
+    public GameMessage.MessageType type;
+
+    @Param({"16", "100", "1000"})
+    public int size;
+
+    // Fraction of the cells that are mines
+    @Param({"0.01", "0.2"})
+    public double density;
+
+    private GameMessage message;
+    private ByteBuffer writeBuffer;
+    private ByteBuffer frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        int firstClick = size / 2;
+        GameSession session = new GameSession(2, size, (int) (size * size * density), GameSession.DEFAULT_TURN_TIME);
+        Board board = session.getBoard();
+        board.placeMines(SEED, firstClick, firstClick);
+        CellIndexList opening = board.revealCell(firstClick, firstClick);
+        switch (type) {
+            case MOVE:
+                message = new GameMessage(type, firstClick, firstClick, false);
+                break;
+            case MINE_POSITIONS:
+                message = new GameMessage(type, board.getMinePositions());
+                break;
+            case REVEAL_DELTA:
+                message = new GameMessage(type, firstClick, firstClick, false, RevealDelta.capture(board, opening));
+                break;
+            case RESYNC:
+                message = new GameMessage(type, SnapshotCodec.write(session));
+                break;
+            default:
+                throw new IllegalArgumentException("No benchmark message for " + type);
+        }
+        writeBuffer = ByteBuffer.allocate(MessageCodec.frameLength(message));
+        frame = MessageCodec.encodeFrame(message);
+        // Fails the setup rather than timing a codec that loses data
+        if (MessageCodec.decodeFrame(frame.duplicate()).getType() != type) {
+            throw new IOException(type + " did not survive a round trip");
+        }
+    }
+
+    @Benchmark
+    public int encode() {
+        writeBuffer.clear();
+        if (writeBuffer.remaining() < MessageCodec.frameLength(message)) {
+            throw new IllegalStateException("Frame outgrew its buffer");
+        }
+        MessageCodec.encode(message, writeBuffer);
+        return writeBuffer.position();
+    }
+
+    @Benchmark
+    public GameMessage decode() throws IOException {
+        frame.rewind();
+        return MessageCodec.decodeFrame(frame);
+    }
+}
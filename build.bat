@@ -1,2 +1,2 @@
 @echo off
-javac -cp . src/main/java/config/*.java src/main/java/model/*.java src/main/java/network/*.java src/main/java/ui/theme/DarkTheme.java src/main/java/ui/pages/*.java src/main/java/ui/MainFrame.java src/main/java/Main.java 
\ No newline at end of file
+javac -cp . src/main/java/config/*.java src/main/java/log/*.java src/main/java/model/*.java src/main/java/network/*.java src/main/java/server/*.java src/main/java/ui/theme/DarkTheme.java src/main/java/ui/components/*.java src/main/java/ui/pages/*.java src/main/java/ui/MainFrame.java src/main/java/ui/UpdateBatcher.java src/main/java/Main.java 
\ No newline at end of file
@@ -1,10 +1,35 @@
 import javax.swing.SwingUtilities;
 
+import config.GameConfig;
+import log.EventLog;
+import server.RoomServer;
 import ui.MainFrame;
 import ui.theme.DarkTheme;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (hasFlag(args, "--server")) {
+            runServer(args);
+        } else {
+            runClient();
+        }
+    }
+
+    // Headless room server: java Main --server [--port N] [--loops N].
+    // Kept apart from runClient so that no AWT class is ever loaded.
+    private static void runServer(String[] args) throws Exception {
+        int port = intOption(args, "--port", GameConfig.getInstance().getPort());
+        int loops = intOption(args, "--loops", Runtime.getRuntime().availableProcessors());
+        RoomServer server = new RoomServer(port, loops);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        server.start();
+        // The server's threads are daemons, so keep the JVM alive here
+        while (server.isRunning()) {
+            Thread.sleep(1000);
+        }
+    }
+
+    private static void runClient() {
         SwingUtilities.invokeLater(() -> {
             try {
                 // Set the dark theme
@@ -12,8 +37,26 @@ public class Main {
                 // Create and show the main window
                 MainFrame.getInstance().setVisible(true);
             } catch (Exception e) {
-                e.printStackTrace();
+                EventLog.error("ui.start_failed", e);
             }
         });
     }
+
+    private static boolean hasFlag(String[] args, String flag) {
+        for (String arg : args) {
+            if (arg.equals(flag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int intOption(String[] args, String option, int defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(option)) {
+                return Integer.parseInt(args[i + 1]);
+            }
+        }
+        return defaultValue;
+    }
 }
\ No newline at end of file
@@ -3,6 +3,27 @@ package config;
 public class GameConfig {
     private static GameConfig instance;
     private int port = 12345; // Default port
+    // Run connection handlers on virtual threads (JDK 21+), see ConnectionExecutors
+    private boolean virtualThreads = Boolean.getBoolean("minesweeper.virtualThreads");
+    // Hosts keep the mine layout to themselves and send clients only what
+    // each move uncovers; the client follows whichever mode the host uses
+    private boolean fogOfWar = Boolean.getBoolean("minesweeper.fogOfWar");
+    // How often each connection measures its round-trip time; 0 turns it off
+    private int pingIntervalMillis = Integer.getInteger("minesweeper.pingInterval", 2000);
+    // A connection that has received nothing for this long is taken to be
+    // dead and closed; 0 waits forever
+    private int idleTimeoutMillis = Integer.getInteger("minesweeper.idleTimeout", 6000);
+    // How long a host keeps a dropped client's game, and the client keeps
+    // reconnecting, before giving up; 0 ends the game at once
+    private int resumeWindowMillis = Integer.getInteger("minesweeper.resumeWindow", 10000);
+    // Directory each match is recorded to as a GameJournal; null records
+    // nothing
+    private String journalDir = System.getProperty("minesweeper.journalDir");
+    // Bound on each connection's unsent messages, and what to do when a
+    // peer falls that far behind: the name of an OutboundQueue.OverflowPolicy,
+    // which OutboundQueue.OverflowPolicy.parse reads
+    private int sendQueueCapacity = Integer.getInteger("minesweeper.sendQueueCapacity", 1024);
+    private String sendQueuePolicy = System.getProperty("minesweeper.sendQueuePolicy", "DISCONNECT");
 
     private GameConfig() {}
 
@@ -20,4 +41,78 @@ public class GameConfig {
     public void setPort(int port) {
         this.port = port;
     }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public boolean isFogOfWar() {
+        return fogOfWar;
+    }
+
+    public void setFogOfWar(boolean fogOfWar) {
+        this.fogOfWar = fogOfWar;
+    }
+
+    public int getPingIntervalMillis() {
+        return pingIntervalMillis;
+    }
+
+    public void setPingIntervalMillis(int pingIntervalMillis) {
+        this.pingIntervalMillis = pingIntervalMillis;
+    }
+
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(int idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public int getResumeWindowMillis() {
+        return resumeWindowMillis;
+    }
+
+    public void setResumeWindowMillis(int resumeWindowMillis) {
+        this.resumeWindowMillis = resumeWindowMillis;
+    }
+
+    // How often to ping: at the configured interval, but at least three
+    // times per idle timeout so that a live peer is never timed out
+    public int getHeartbeatIntervalMillis() {
+        if (idleTimeoutMillis <= 0) {
+            return pingIntervalMillis;
+        }
+        int heartbeat = Math.max(1, idleTimeoutMillis / 3);
+        return pingIntervalMillis > 0 ? Math.min(pingIntervalMillis, heartbeat) : heartbeat;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public int getSendQueueCapacity() {
+        return sendQueueCapacity;
+    }
+
+    public void setSendQueueCapacity(int sendQueueCapacity) {
+        this.sendQueueCapacity = sendQueueCapacity;
+    }
+
+    public String getSendQueuePolicy() {
+        return sendQueuePolicy;
+    }
+
+    public void setSendQueuePolicy(String sendQueuePolicy) {
+        this.sendQueuePolicy = sendQueuePolicy;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,337 @@
+package log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Leveled, structured event log. An event is a dotted name plus a few
+// key/value fields, e.g. EventLog.debug("turn.changed", "player", 1), and is
+// written as one logfmt line:
+//
+//   2026-10-18T14:03:07.412 DEBUG [AWT-EventQueue-0] turn.changed player=1
+//
+// Logging never does I/O on the caller's thread. The event is put into a
+// lock-free ring buffer and a background thread formats and writes it,
+// either to the console or, with -Dminesweeper.logFile, to a file that rolls
+// over at minesweeper.logMaxBytes keeping minesweeper.logFiles old files. If
+// the ring fills up, events are dropped and the writer reports how many.
+//
+// The level is fixed at startup (-Dminesweeper.logLevel, INFO by default)
+// and the per-level flags are constants, so the JIT removes a disabled call
+// entirely. Hot paths that would box or concatenate arguments should still
+// guard with the flag: if (EventLog.DEBUG) { EventLog.debug(...); }
+public final class EventLog {
+    public enum Level { TRACE, DEBUG, INFO, WARN, ERROR, OFF }
+
+    public static final Level LEVEL = Level.valueOf(System.getProperty("minesweeper.logLevel", "INFO"));
+    public static final boolean TRACE = LEVEL.compareTo(Level.TRACE) <= 0;
+    public static final boolean DEBUG = LEVEL.compareTo(Level.DEBUG) <= 0;
+    public static final boolean INFO = LEVEL.compareTo(Level.INFO) <= 0;
+    public static final boolean WARN = LEVEL.compareTo(Level.WARN) <= 0;
+    public static final boolean ERROR = LEVEL.compareTo(Level.ERROR) <= 0;
+
+    private static final int CAPACITY = 8192;
+    private static final long IDLE_PARK_NANOS = 10_000_000;
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final class Event {
+        final long time = System.currentTimeMillis();
+        final String thread = Thread.currentThread().getName();
+        final Level level;
+        final String name;
+        final Object[] fields;
+        final Throwable error;
+
+        Event(Level level, String name, Object[] fields, Throwable error) {
+            this.level = level;
+            this.name = name;
+            this.fields = fields;
+            this.error = error;
+        }
+    }
+
+    // Multi-producer, single-consumer ring. A producer claims a sequence
+    // number by moving head forward, then publishes its event into that
+    // slot; the writer takes slots in order, clears them and moves tail.
+    private static final AtomicReferenceArray<Event> ring = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong head = new AtomicLong();
+    private static final AtomicLong tail = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile boolean stopping;
+    private static final Thread writerThread = startWriter();
+
+    private EventLog() {}
+
+    public static void trace(String event) { if (TRACE) publish(Level.TRACE, event, null, null); }
+    public static void trace(String event, String k1, Object v1) { if (TRACE) publish(Level.TRACE, event, new Object[] {k1, v1}, null); }
+    public static void trace(String event, String k1, Object v1, String k2, Object v2) { if (TRACE) publish(Level.TRACE, event, new Object[] {k1, v1, k2, v2}, null); }
+    public static void trace(String event, String k1, Object v1, String k2, Object v2, String k3, Object v3) { if (TRACE) publish(Level.TRACE, event, new Object[] {k1, v1, k2, v2, k3, v3}, null); }
+
+    public static void debug(String event) { if (DEBUG) publish(Level.DEBUG, event, null, null); }
+    public static void debug(String event, String k1, Object v1) { if (DEBUG) publish(Level.DEBUG, event, new Object[] {k1, v1}, null); }
+    public static void debug(String event, String k1, Object v1, String k2, Object v2) { if (DEBUG) publish(Level.DEBUG, event, new Object[] {k1, v1, k2, v2}, null); }
+    public static void debug(String event, String k1, Object v1, String k2, Object v2, String k3, Object v3) { if (DEBUG) publish(Level.DEBUG, event, new Object[] {k1, v1, k2, v2, k3, v3}, null); }
+
+    public static void info(String event) { if (INFO) publish(Level.INFO, event, null, null); }
+    public static void info(String event, String k1, Object v1) { if (INFO) publish(Level.INFO, event, new Object[] {k1, v1}, null); }
+    public static void info(String event, String k1, Object v1, String k2, Object v2) { if (INFO) publish(Level.INFO, event, new Object[] {k1, v1, k2, v2}, null); }
+    public static void info(String event, String k1, Object v1, String k2, Object v2, String k3, Object v3) { if (INFO) publish(Level.INFO, event, new Object[] {k1, v1, k2, v2, k3, v3}, null); }
+
+    public static void warn(String event) { if (WARN) publish(Level.WARN, event, null, null); }
+    public static void warn(String event, String k1, Object v1) { if (WARN) publish(Level.WARN, event, new Object[] {k1, v1}, null); }
+    public static void warn(String event, String k1, Object v1, String k2, Object v2) { if (WARN) publish(Level.WARN, event, new Object[] {k1, v1, k2, v2}, null); }
+    public static void warn(String event, Throwable error) { if (WARN) publish(Level.WARN, event, null, error); }
+    public static void warn(String event, String k1, Object v1, Throwable error) { if (WARN) publish(Level.WARN, event, new Object[] {k1, v1}, error); }
+
+    public static void error(String event) { if (ERROR) publish(Level.ERROR, event, null, null); }
+    public static void error(String event, String k1, Object v1) { if (ERROR) publish(Level.ERROR, event, new Object[] {k1, v1}, null); }
+    public static void error(String event, Throwable error) { if (ERROR) publish(Level.ERROR, event, null, error); }
+    public static void error(String event, String k1, Object v1, Throwable error) { if (ERROR) publish(Level.ERROR, event, new Object[] {k1, v1}, error); }
+
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private static void publish(Level level, String name, Object[] fields, Throwable error) {
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail.get() >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+        ring.lazySet((int) (seq & (CAPACITY - 1)), new Event(level, name, fields, error));
+    }
+
+    // Writer
+
+    private static Thread startWriter() {
+        if (LEVEL == Level.OFF) {
+            return null;
+        }
+        Thread thread = new Thread(EventLog::writeLoop, "event-log");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(EventLog::stop, "event-log-shutdown"));
+        return thread;
+    }
+
+    // Lets the writer finish what is queued; run at JVM exit.
+    private static void stop() {
+        stopping = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeLoop() {
+        Sink sink = Sink.open();
+        StringBuilder line = new StringBuilder(256);
+        long reportedDrops = 0;
+        while (true) {
+            long seq = tail.get();
+            int slot = (int) (seq & (CAPACITY - 1));
+            Event event = seq < head.get() ? ring.get(slot) : null;
+            if (event == null) {
+                // Empty, or the producer has claimed the slot but not filled it yet
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    sink.write(Level.WARN, format(line, new Event(Level.WARN, "log.dropped",
+                        new Object[] {"events", drops - reportedDrops}, null)));
+                    reportedDrops = drops;
+                }
+                sink.flush();
+                if (stopping && seq == head.get()) {
+                    sink.close();
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            ring.set(slot, null);
+            tail.lazySet(seq + 1);
+            sink.write(event.level, format(line, event));
+        }
+    }
+
+    private static String format(StringBuilder line, Event event) {
+        line.setLength(0);
+        line.append(TIME_FORMAT.format(Instant.ofEpochMilli(event.time)))
+            .append(' ').append(event.level)
+            .append(" [").append(event.thread).append("] ")
+            .append(event.name);
+        if (event.fields != null) {
+            for (int i = 0; i + 1 < event.fields.length; i += 2) {
+                line.append(' ').append(event.fields[i]).append('=');
+                appendValue(line, event.fields[i + 1]);
+            }
+        }
+        if (event.error != null) {
+            line.append(" error=");
+            appendValue(line, String.valueOf(event.error.getMessage()));
+            StringWriter trace = new StringWriter();
+            event.error.printStackTrace(new PrintWriter(trace));
+            line.append(System.lineSeparator()).append(trace.toString().trim());
+        }
+        return line.toString();
+    }
+
+    private static void appendValue(StringBuilder line, Object value) {
+        String text = String.valueOf(value);
+        boolean quote = text.isEmpty();
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c <= ' ' || c == '=' || c == '"';
+        }
+        if (!quote) {
+            line.append(text);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\');
+            }
+            line.append(c == '\n' ? ' ' : c);
+        }
+        line.append('"');
+    }
+
+    // Where formatted lines go: the console, or a rolling file
+    private static class Sink {
+        static Sink open() {
+            String file = System.getProperty("minesweeper.logFile");
+            if (file == null || file.isEmpty()) {
+                return new Sink();
+            }
+            return new RollingFileSink(new File(file),
+                Long.getLong("minesweeper.logMaxBytes", 10L * 1024 * 1024),
+                Integer.getInteger("minesweeper.logFiles", 5));
+        }
+
+        void write(Level level, String line) {
+            (level.compareTo(Level.WARN) >= 0 ? System.err : System.out).println(line);
+        }
+
+        void flush() {}
+
+        void close() {}
+    }
+
+    private static final class RollingFileSink extends Sink {
+        private final File file;
+        private final long maxBytes;
+        private final int keepFiles;
+        private Writer out;
+        private long written;
+
+        RollingFileSink(File file, long maxBytes, int keepFiles) {
+            this.file = file;
+            this.maxBytes = maxBytes;
+            this.keepFiles = keepFiles;
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null) {
+                dir.mkdirs();
+            }
+            this.written = file.length();
+            openFile();
+        }
+
+        @Override
+        void write(Level level, String line) {
+            if (out == null) {
+                super.write(level, line);
+                return;
+            }
+            try {
+                if (written >= maxBytes) {
+                    roll();
+                }
+                out.write(line);
+                out.write(System.lineSeparator());
+                // Close enough for deciding when to roll
+                written += line.length() + 1;
+            } catch (IOException e) {
+                System.err.println("Event log file failed, logging to the console: " + e.getMessage());
+                closeFile();
+                super.write(level, line);
+            }
+        }
+
+        // minesweeper.log becomes minesweeper.log.1, .1 becomes .2 and so on;
+        // the oldest is deleted
+        private void roll() throws IOException {
+            closeFile();
+            new File(file.getPath() + "." + keepFiles).delete();
+            for (int i = keepFiles - 1; i >= 1; i--) {
+                new File(file.getPath() + "." + i).renameTo(new File(file.getPath() + "." + (i + 1)));
+            }
+            if (keepFiles > 0) {
+                file.renameTo(new File(file.getPath() + ".1"));
+            } else {
+                file.delete();
+            }
+            written = 0;
+            openFile();
+            if (out == null) {
+                throw new IOException("Could not reopen " + file);
+            }
+        }
+
+        private void openFile() {
+            try {
+                out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file, true), StandardCharsets.UTF_8), 64 * 1024);
+            } catch (IOException e) {
+                System.err.println("Cannot open event log " + file + ", logging to the console: " + e.getMessage());
+                out = null;
+            }
+        }
+
+        private void closeFile() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing more can be done with it
+                }
+                out = null;
+            }
+        }
+
+        @Override
+        void flush() {
+            if (out != null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    System.err.println("Event log file failed: " + e.getMessage());
+                    closeFile();
+                }
+            }
+        }
+
+        @Override
+        void close() {
+            closeFile();
+        }
+    }
+}
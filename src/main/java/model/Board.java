@@ -3,17 +3,47 @@ package model;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class Board implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     private static final int DEFAULT_SIZE = 10;
     private static final int DEFAULT_MINES = 20;
+    private static final int DEFAULT_SAFE_ZONE_RADIUS = 1;
+
+    // Every cell is packed into a single byte: the low nibble holds the
+    // adjacent mine count (0-8) and the high bits hold the state flags.
+    // Cells are stored row-major, so cell (x, y) lives at x * size + y.
+    private static final int ADJACENT_MASK = 0x0F;
+    private static final int MINE = 0x10;
+    private static final int REVEALED = 0x20;
+    private static final int FLAGGED = 0x40;
 
     private final int size;
     private final int numberOfMines;
-    private final Cell[][] cells;
+    private final byte[] cells;
     private boolean minesPlaced = false;
+    private transient RevealEngine revealEngine;
+    private transient SplittableRandom random;
+    private int safeZoneRadius = DEFAULT_SAFE_ZONE_RADIUS;
+
+    // Running totals kept in step with every cell change so that win and
+    // progress checks never have to scan the board.
+    private int mineCount;
+    private int revealedSafeCount;
+    private int flagCount;
+    private int correctFlagCount;
+
+    // Order-independent fingerprint of the mine layout: the sum of a mixed
+    // hash of every mine's index, so it too is updated in O(1) per mine.
+    private long layoutHash;
+
+    // The inputs that reproduce the current layout, kept while it is still
+    // exactly what placeMines generated from them.
+    private boolean seeded;
+    private long seed;
+    private int firstClickX;
+    private int firstClickY;
 
     public Board() {
         this(DEFAULT_SIZE, DEFAULT_MINES);
@@ -22,105 +52,315 @@ public class Board implements Serializable {
     public Board(int size, int numberOfMines) {
         this.size = size;
         this.numberOfMines = numberOfMines;
-        this.cells = new Cell[size][size];
-        initializeCells();
+        this.cells = new byte[size * size];
     }
 
-    private void initializeCells() {
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                cells[i][j] = new Cell();
-            }
+    // Places the mines from a fresh seed drawn from the board's generator.
+    public void placeMines(int firstClickX, int firstClickY) {
+        if (minesPlaced) {
+            return;
+        }
+        if (random == null) {
+            random = new SplittableRandom();
         }
+        placeMines(random.nextLong(), firstClickX, firstClickY);
     }
 
-    public void placeMines(int firstClickX, int firstClickY) {
+    // Places the mines with Floyd's sampling algorithm: exactly one random
+    // draw per mine and no retries, however dense the board is. Candidates
+    // are all cells outside the safe zone, a square of safeZoneRadius cells
+    // around the first click, which shrinks if the board is too crowded to
+    // keep it clear.
+    //
+    // The layout depends only on the seed, the board size, the mine count,
+    // the safe zone radius and the first click, so a peer holding the same
+    // numbers (see getLayoutSeed) regenerates exactly the same board.
+    public void placeMines(long seed, int firstClickX, int firstClickY) {
         if (minesPlaced) {
             return;
         }
+        SplittableRandom generator = new SplittableRandom(seed);
 
-        Random random = new Random();
-        int minesPlaced = 0;
+        // Clamped so that the loop below stays short and the zone's edges
+        // cannot overflow
+        int radius = Math.min(Math.max(0, safeZoneRadius), size);
+        while (radius > 0 && cells.length - safeZoneCellCount(firstClickX, firstClickY, radius) < numberOfMines) {
+            radius--;
+        }
+        int minX = Math.max(firstClickX - radius, 0);
+        int maxX = Math.min(firstClickX + radius, size - 1);
+        int minY = Math.max(firstClickY - radius, 0);
+        int maxY = Math.min(firstClickY + radius, size - 1);
 
-        while (minesPlaced < numberOfMines) {
-            int x = random.nextInt(size);
-            int y = random.nextInt(size);
-            // Ensure that the mine is not placed on the first click position
-            // and that the cell is not already a mine
-            if ((x != firstClickX || y != firstClickY) && !cells[x][y].isMine()) {
-                cells[x][y].setMine(true);
-                minesPlaced++;
+        int candidates = cells.length - safeZoneCellCount(firstClickX, firstClickY, radius);
+        int mines = Math.min(numberOfMines, candidates);
+        for (int j = candidates - mines; j < candidates; j++) {
+            int index = candidateToIndex(generator.nextInt(j + 1), minX, maxX, minY, maxY);
+            if (isMine(index)) {
+                index = candidateToIndex(j, minX, maxX, minY, maxY);
             }
+            setMine(index);
         }
 
-        calculateAdjacentMines();
+        this.seeded = true;
+        this.seed = seed;
+        this.firstClickX = firstClickX;
+        this.firstClickY = firstClickY;
         this.minesPlaced = true;
     }
 
-    public void placeMinesFromPositions(List<MinePosition> positions) {
+    // Regenerates a layout described by a peer and checks it against the
+    // peer's hash. On a mismatch the board is left without mines, ready for
+    // placeMinesFromPositions, and false is returned.
+    public boolean placeMines(LayoutSeed layout) {
         if (minesPlaced) {
-            return;
+            return layout.layoutHash == layoutHash;
         }
+        if (layout.size != size || layout.numberOfMines != numberOfMines
+                || !isValidPosition(layout.firstClickX, layout.firstClickY)) {
+            return false;
+        }
+        safeZoneRadius = layout.safeZoneRadius;
+        placeMines(layout.seed, layout.firstClickX, layout.firstClickY);
+        if (layoutHash == layout.layoutHash) {
+            return true;
+        }
+        for (int i = 0; i < cells.length; i++) {
+            clearMine(i);
+        }
+        seeded = false;
+        minesPlaced = false;
+        return false;
+    }
+
+    // The numbers that reproduce this board's layout, or null if it was not
+    // generated from a seed or has been changed since.
+    public LayoutSeed getLayoutSeed() {
+        if (!seeded) {
+            return null;
+        }
+        return new LayoutSeed(seed, size, numberOfMines, safeZoneRadius, firstClickX, firstClickY, layoutHash);
+    }
+
+    public long getLayoutHash() {
+        return layoutHash;
+    }
 
-        // Clear any existing mines
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                cells[i][j].setMine(false);
+    private int safeZoneCellCount(int x, int y, int radius) {
+        int rows = Math.min(x + radius, size - 1) - Math.max(x - radius, 0) + 1;
+        int columns = Math.min(y + radius, size - 1) - Math.max(y - radius, 0) + 1;
+        return rows * columns;
+    }
+
+    // Maps the n-th cell outside the safe zone to its board index by skipping
+    // over the zone's row segments, which are visited in ascending order.
+    private int candidateToIndex(int candidate, int minX, int maxX, int minY, int maxY) {
+        int index = candidate;
+        int width = maxY - minY + 1;
+        for (int x = minX; x <= maxX; x++) {
+            if (index >= x * size + minY) {
+                index += width;
             }
         }
+        return index;
+    }
 
-        // Place mines at specified positions
+    public void placeMinesFromPositions(List<MinePosition> positions) {
+        if (minesPlaced) {
+            return;
+        }
+
+        // No mines can be on the board yet: they are only ever set by the
+        // two placement methods, and both mark the board as placed.
         for (MinePosition pos : positions) {
-            cells[pos.x][pos.y].setMine(true);
+            setMine(index(pos.x, pos.y));
         }
 
-        calculateAdjacentMines();
         this.minesPlaced = true;
     }
 
     public List<MinePosition> getMinePositions() {
         List<MinePosition> positions = new ArrayList<>();
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (cells[i][j].isMine()) {
-                    positions.add(new MinePosition(i, j));
-                }
+        for (int i = 0; i < cells.length; i++) {
+            if ((cells[i] & MINE) != 0) {
+                positions.add(new MinePosition(getX(i), getY(i)));
             }
         }
         return positions;
     }
 
-    private void calculateAdjacentMines() {
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (!cells[i][j].isMine()) {
-                    int count = countAdjacentMines(i, j);
-                    cells[i][j].setAdjacentMines(count);
-                }
-            }
+    // Moves a single mine, e.g. to relocate one away from a first click,
+    // updating only the adjacency counts around the two cells involved.
+    public void moveMine(int fromX, int fromY, int toX, int toY) {
+        if (!isValidPosition(fromX, fromY) || !isValidPosition(toX, toY)) {
+            return;
+        }
+        int from = index(fromX, fromY);
+        int to = index(toX, toY);
+        if (!isMine(from) || isMine(to)) {
+            return;
+        }
+        clearMine(from);
+        setMine(to);
+        seeded = false;
+    }
+
+    // Adjacency counts are built by scattering +1 from each mine into its
+    // neighbours, so placing a layout costs O(mines) rather than O(cells).
+    // Mine cells carry a count too; it is simply never shown.
+    private void setMine(int index) {
+        if (isMine(index)) {
+            return;
+        }
+        cells[index] |= MINE;
+        mineCount++;
+        layoutHash += mixIndex(index);
+        if (isRevealed(index)) {
+            revealedSafeCount--;
+        }
+        if (isFlagged(index)) {
+            correctFlagCount++;
+        }
+        addToNeighbours(index, 1);
+    }
+
+    private void clearMine(int index) {
+        if (!isMine(index)) {
+            return;
         }
+        cells[index] &= ~MINE;
+        mineCount--;
+        layoutHash -= mixIndex(index);
+        if (isRevealed(index)) {
+            revealedSafeCount++;
+        }
+        if (isFlagged(index)) {
+            correctFlagCount--;
+        }
+        addToNeighbours(index, -1);
     }
 
-    private int countAdjacentMines(int x, int y) {
-        int count = 0;
-        for (int i = -1; i <= 1; i++) {
-            for (int j = -1; j <= 1; j++) {
-                int newX = x + i;
-                int newY = y + j;
-                if (isValidPosition(newX, newY) && cells[newX][newY].isMine()) {
-                    count++;
+    // SplitMix64 finalizer, so that nearby indices give unrelated hashes.
+    private static long mixIndex(int index) {
+        long z = index * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private void addToNeighbours(int index, int delta) {
+        int x = getX(index);
+        int y = getY(index);
+        int minX = Math.max(x - 1, 0);
+        int maxX = Math.min(x + 1, size - 1);
+        int minY = Math.max(y - 1, 0);
+        int maxY = Math.min(y + 1, size - 1);
+        for (int i = minX; i <= maxX; i++) {
+            for (int j = minY; j <= maxY; j++) {
+                int neighbour = i * size + j;
+                if (neighbour != index) {
+                    // The count lives in the low nibble and never leaves 0-8,
+                    // so a plain add cannot carry into the flag bits.
+                    cells[neighbour] += delta;
                 }
             }
         }
-        return count;
     }
 
-    private boolean isValidPosition(int x, int y) {
+    public boolean isValidPosition(int x, int y) {
         return x >= 0 && x < size && y >= 0 && y < size;
     }
 
-    public Cell[][] getCells() {
-        return cells;
+    // Cell accessors. The (x, y) forms are for callers working in board
+    // coordinates; the index forms avoid the multiply in tight loops.
+    public int index(int x, int y) { return x * size + y; }
+    public int getX(int index) { return index / size; }
+    public int getY(int index) { return index % size; }
+    public int getCellCount() { return cells.length; }
+
+    public boolean isMine(int x, int y) { return isMine(index(x, y)); }
+    public boolean isMine(int index) { return (cells[index] & MINE) != 0; }
+    public boolean isRevealed(int x, int y) { return isRevealed(index(x, y)); }
+    public boolean isRevealed(int index) { return (cells[index] & REVEALED) != 0; }
+    public boolean isFlagged(int x, int y) { return isFlagged(index(x, y)); }
+    public boolean isFlagged(int index) { return (cells[index] & FLAGGED) != 0; }
+    public int getAdjacentMines(int x, int y) { return getAdjacentMines(index(x, y)); }
+    public int getAdjacentMines(int index) { return cells[index] & ADJACENT_MASK; }
+
+    public void setRevealed(int x, int y, boolean revealed) {
+        int index = index(x, y);
+        if (isRevealed(index) == revealed) {
+            return;
+        }
+        if (revealed) {
+            markRevealed(index);
+        } else {
+            cells[index] &= ~REVEALED;
+            if (!isMine(index)) {
+                revealedSafeCount--;
+            }
+        }
+    }
+
+    // Used by RevealEngine, which has already checked that the cell is in
+    // bounds and not yet revealed.
+    void markRevealed(int index) {
+        cells[index] |= REVEALED;
+        if (!isMine(index)) {
+            revealedSafeCount++;
+        }
+    }
+
+    // Reveals a cell whose contents are known only from the host, as on a
+    // fog-of-war client: the mine bit and count are taken as given instead
+    // of coming from a placed layout. Returns false if already revealed.
+    public boolean revealKnownCell(int index, boolean mine, int adjacentMines) {
+        if (isRevealed(index)) {
+            return false;
+        }
+        cells[index] = (byte) ((cells[index] & FLAGGED) | (mine ? MINE : 0) | (adjacentMines & ADJACENT_MASK));
+        if (mine) {
+            mineCount++;
+            if (isFlagged(index)) {
+                correctFlagCount++;
+            }
+        }
+        markRevealed(index);
+        return true;
+    }
+
+    // Progress counters. Until the mines are placed the configured mine count
+    // stands in for the real one.
+    public int getMineCount() { return minesPlaced ? mineCount : numberOfMines; }
+    public int getFlagCount() { return flagCount; }
+    public int getCorrectFlagCount() { return correctFlagCount; }
+    public int getRevealedSafeCount() { return revealedSafeCount; }
+    public int getUnrevealedSafeCount() { return cells.length - getMineCount() - revealedSafeCount; }
+    public int getMinesRemaining() { return getMineCount() - flagCount; }
+
+    public int getClearedPercent() {
+        int safeCells = cells.length - getMineCount();
+        return safeCells <= 0 ? 100 : (int) (revealedSafeCount * 100L / safeCells);
+    }
+
+    // Every safe cell revealed, which wins the game. Flags are only notes
+    // and do not count.
+    public boolean isCleared() {
+        return getUnrevealedSafeCount() == 0;
+    }
+
+    // Replaces the generator that seeds mine placement, e.g. with a seeded one.
+    public void setRandom(SplittableRandom random) {
+        this.random = random;
+    }
+
+    // 0 keeps only the clicked cell free of mines, 1 its 3x3 neighbourhood.
+    public void setSafeZoneRadius(int safeZoneRadius) {
+        this.safeZoneRadius = safeZoneRadius;
+    }
+
+    public int getSafeZoneRadius() {
+        return safeZoneRadius;
     }
 
     public int getSize() {
@@ -142,28 +382,109 @@ public class Board implements Serializable {
         }
     }
 
+    // Everything needed to regenerate a layout with placeMines(LayoutSeed),
+    // plus the hash of the result so that the receiver can verify it.
+    public static class LayoutSeed implements Serializable {
+        private static final long serialVersionUID = 1L;
+        public final long seed;
+        public final int size;
+        public final int numberOfMines;
+        public final int safeZoneRadius;
+        public final int firstClickX;
+        public final int firstClickY;
+        public final long layoutHash;
+
+        public LayoutSeed(long seed, int size, int numberOfMines, int safeZoneRadius,
+                int firstClickX, int firstClickY, long layoutHash) {
+            this.seed = seed;
+            this.size = size;
+            this.numberOfMines = numberOfMines;
+            this.safeZoneRadius = safeZoneRadius;
+            this.firstClickX = firstClickX;
+            this.firstClickY = firstClickY;
+            this.layoutHash = layoutHash;
+        }
+    }
+
     public void toggleFlag(int x, int y) {
-        if (x >= 0 && x < size && y >= 0 && y < size && !cells[x][y].isRevealed()) {
-            cells[x][y].setFlagged(!cells[x][y].isFlagged());
-        }
-    }
-
-    public void revealCell(int x, int y) {
-        if (x >= 0 && x < size && y >= 0 && y < size && !cells[x][y].isFlagged()) {
-            cells[x][y].setRevealed(true);
-            if (cells[x][y].getAdjacentMines() == 0 && !cells[x][y].isMine()) {
-                // Reveal adjacent cells recursively
-                for (int i = -1; i <= 1; i++) {
-                    for (int j = -1; j <= 1; j++) {
-                        int newX = x + i;
-                        int newY = y + j;
-                        if (newX >= 0 && newX < size && newY >= 0 && newY < size
-                            && !cells[newX][newY].isRevealed()) {
-                            revealCell(newX, newY);
-                        }
-                    }
+        if (isValidPosition(x, y) && !isRevealed(x, y)) {
+            int index = index(x, y);
+            cells[index] ^= FLAGGED;
+            int delta = isFlagged(index) ? 1 : -1;
+            flagCount += delta;
+            if (isMine(index)) {
+                correctFlagCount += delta;
+            }
+        }
+    }
+
+    // Bit planes, one bit per cell in index order with the lowest bit of
+    // each byte first, as used by SnapshotCodec. The planes must each hold
+    // (getCellCount() + 7) / 8 bytes.
+    void writePlanes(byte[] mines, byte[] revealed, byte[] flagged) {
+        for (int i = 0; i < cells.length; i += 8) {
+            int end = Math.min(i + 8, cells.length);
+            int mine = 0;
+            int open = 0;
+            int flag = 0;
+            for (int j = i; j < end; j++) {
+                int cell = cells[j];
+                int bit = 1 << (j - i);
+                if ((cell & MINE) != 0) mine |= bit;
+                if ((cell & REVEALED) != 0) open |= bit;
+                if ((cell & FLAGGED) != 0) flag |= bit;
+            }
+            mines[i >>> 3] = (byte) mine;
+            revealed[i >>> 3] = (byte) open;
+            flagged[i >>> 3] = (byte) flag;
+        }
+    }
+
+    // Fills a new board from bit planes. With the mines placed, adjacency
+    // counts are rebuilt from the mine plane; otherwise only revealed cells
+    // are known, and their counts are taken from counts, indexed by cell.
+    // Planes are walked a byte at a time, skipping the empty ones, so the
+    // cost follows the number of set bits rather than the board size. The
+    // planes must be clear past the last cell; SnapshotCodec checks them.
+    void readPlanes(byte[] mines, byte[] revealed, byte[] flagged, boolean placed, byte[] counts) {
+        if (placed) {
+            for (int i = 0; i < mines.length; i++) {
+                for (int bits = mines[i] & 0xFF; bits != 0; bits &= bits - 1) {
+                    setMine((i << 3) + Integer.numberOfTrailingZeros(bits));
+                }
+            }
+        }
+        for (int i = 0; i < revealed.length; i++) {
+            for (int bits = revealed[i] & 0xFF; bits != 0; bits &= bits - 1) {
+                int index = (i << 3) + Integer.numberOfTrailingZeros(bits);
+                if (placed) {
+                    markRevealed(index);
+                } else {
+                    boolean mine = (mines[i] & (1 << (index & 7))) != 0;
+                    revealKnownCell(index, mine, counts[index]);
                 }
             }
         }
+        for (int i = 0; i < flagged.length; i++) {
+            for (int bits = flagged[i] & 0xFF; bits != 0; bits &= bits - 1) {
+                int index = (i << 3) + Integer.numberOfTrailingZeros(bits);
+                cells[index] |= FLAGGED;
+                flagCount++;
+                if (isMine(index)) {
+                    correctFlagCount++;
+                }
+            }
+        }
+        minesPlaced = placed;
+    }
+
+    // Reveals the cell and any opening connected to it. The returned list
+    // holds the indices of every newly revealed cell and is reused by the
+    // next call, so callers should apply it before revealing again.
+    public CellIndexList revealCell(int x, int y) {
+        if (revealEngine == null) {
+            revealEngine = new RevealEngine();
+        }
+        return revealEngine.reveal(this, x, y);
     }
 }
\ No newline at end of file
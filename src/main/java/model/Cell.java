@@ -1,28 +0,0 @@
-package model;
-
-import java.io.Serializable;
-
-public class Cell implements Serializable {
-    private static final long serialVersionUID = 1L;
-    private boolean isMine;
-    private boolean isRevealed;
-    private boolean isFlagged;
-    private int adjacentMines;
-
-    public Cell() {
-        this.isMine = false;
-        this.isRevealed = false;
-        this.isFlagged = false;
-        this.adjacentMines = 0;
-    }
-
-    // Getters and setters
-    public boolean isMine() { return isMine; }
-    public void setMine(boolean isMine) { this.isMine = isMine; }
-    public boolean isRevealed() { return isRevealed; }
-    public void setRevealed(boolean isRevealed) { this.isRevealed = isRevealed; }
-    public boolean isFlagged() { return isFlagged; }
-    public void setFlagged(boolean isFlagged) { this.isFlagged = isFlagged; }
-    public int getAdjacentMines() { return adjacentMines; }
-    public void setAdjacentMines(int adjacentMines) { this.adjacentMines = adjacentMines; }
-} 
\ No newline at end of file
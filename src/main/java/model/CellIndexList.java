@@ -0,0 +1,55 @@
+package model;
+
+import java.util.Arrays;
+
+// A growable list of cell indices backed by a primitive array. Instances are
+// meant to be cleared and reused, so steady-state use allocates nothing.
+public class CellIndexList {
+    private int[] indices;
+    private int size;
+
+    public CellIndexList() {
+        this(64);
+    }
+
+    public CellIndexList(int initialCapacity) {
+        this.indices = new int[Math.max(1, initialCapacity)];
+    }
+
+    public void add(int index) {
+        if (size == indices.length) {
+            indices = Arrays.copyOf(indices, indices.length * 2);
+        }
+        indices[size++] = index;
+    }
+
+    public int get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + size);
+        }
+        return indices[i];
+    }
+
+    public int removeLast() {
+        if (size == 0) {
+            throw new IllegalStateException("List is empty");
+        }
+        return indices[--size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(indices, size);
+    }
+}
@@ -0,0 +1,396 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// An unbounded board for "endless" games. The plane is split into
+// CHUNK_SIZE x CHUNK_SIZE chunks whose mines are a pure function of
+// (seed, chunk coordinates), so a chunk is only built when a reveal or the
+// viewport first touches it and can be rebuilt identically later.
+//
+// Loaded chunks live in a bounded cache. Only chunks that can be rebuilt
+// from the seed and a little more are ever evicted: untouched chunks (no
+// reveals or flags) and fully resolved chunks (every safe cell revealed).
+// A resolved chunk is remembered by its key and the state of its mines,
+// two bits each, and comes back with its safe cells revealed and each mine
+// flagged, revealed or hidden as it was left. Memory therefore tracks the
+// explored area, not the size of the plane.
+public class EndlessBoard {
+    public static final int CHUNK_SHIFT = 6;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+
+    private static final int DEFAULT_MAX_CACHED_CHUNKS = 256;
+    private static final int DEFAULT_MAX_REVEAL_CELLS = 1 << 20;
+    private static final int SAFE_ZONE_RADIUS = 1;
+
+    // Same cell packing as Board: adjacent count in the low nibble, flags above.
+    private static final int ADJACENT_MASK = 0x0F;
+    private static final int MINE = 0x10;
+    private static final int REVEALED = 0x20;
+    private static final int FLAGGED = 0x40;
+
+    // Mine states of an evicted resolved chunk, two bits per mine in cell
+    // order. Most chunks are resolved without flagging or hitting any mine
+    // and share the empty array.
+    private static final int MINE_FLAGGED = 1;
+    private static final int MINE_REVEALED = 2;
+    private static final long[] ALL_MINES_HIDDEN = new long[0];
+
+    private final long seed;
+    private final int minesPerChunk;
+    private final int maxCachedChunks;
+    private int maxRevealCells = DEFAULT_MAX_REVEAL_CELLS;
+
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+    // Loaded chunks that may be dropped, least recently loaded or resolved first
+    private final LinkedHashSet<Long> evictable = new LinkedHashSet<>();
+    // Evicted resolved chunks and the state of their mines
+    private final Map<Long, long[]> resolvedChunks = new HashMap<>();
+    private int resolvedChunkCount;
+
+    // The most recently used chunk, so runs of lookups inside one chunk skip the map
+    private long lastKey;
+    private Chunk lastChunk;
+
+    // Scratch space for building chunks and for the flood fill. Coordinates
+    // are stored as interleaved (x, y) pairs.
+    private final long[] mineBits = new long[CHUNK_CELLS / Long.SIZE];
+    private final CellIndexList stack = new CellIndexList();
+    private final CellIndexList revealed = new CellIndexList();
+
+    public EndlessBoard(long seed, double mineDensity) {
+        this(seed, mineDensity, DEFAULT_MAX_CACHED_CHUNKS);
+    }
+
+    public EndlessBoard(long seed, double mineDensity, int maxCachedChunks) {
+        if (mineDensity < 0 || mineDensity >= 1) {
+            throw new IllegalArgumentException("Mine density must be in [0, 1): " + mineDensity);
+        }
+        this.seed = seed;
+        this.minesPerChunk = (int) Math.round(mineDensity * CHUNK_CELLS);
+        this.maxCachedChunks = Math.max(1, maxCachedChunks);
+    }
+
+    public boolean isMine(int x, int y) { return (cell(x, y) & MINE) != 0; }
+    public boolean isRevealed(int x, int y) { return (cell(x, y) & REVEALED) != 0; }
+    public boolean isFlagged(int x, int y) { return (cell(x, y) & FLAGGED) != 0; }
+    public int getAdjacentMines(int x, int y) { return cell(x, y) & ADJACENT_MASK; }
+
+    // Loads every chunk overlapping the given cell rectangle, e.g. the
+    // visible part of the board.
+    public void ensureLoaded(int minX, int minY, int maxX, int maxY) {
+        for (int cx = minX >> CHUNK_SHIFT; cx <= maxX >> CHUNK_SHIFT; cx++) {
+            for (int cy = minY >> CHUNK_SHIFT; cy <= maxY >> CHUNK_SHIFT; cy++) {
+                chunk(cx, cy);
+            }
+        }
+    }
+
+    public void toggleFlag(int x, int y) {
+        Chunk chunk = chunkAt(x, y);
+        int local = localIndex(x, y);
+        if ((chunk.cells[local] & REVEALED) != 0) {
+            return;
+        }
+        chunk.cells[local] ^= FLAGGED;
+        chunk.flags += (chunk.cells[local] & FLAGGED) != 0 ? 1 : -1;
+        updateEvictable(chunk);
+    }
+
+    // Reveals (x, y) and any opening connected to it, across chunk borders.
+    // The result holds interleaved (x, y) pairs of the newly revealed cells
+    // and is reused by the next call. At most maxRevealCells cells are
+    // revealed per call (openings can be unbounded at low densities); if the
+    // limit is hit, hasPendingReveal() is true and continueReveal() carries on.
+    public CellIndexList revealCell(int x, int y) {
+        revealed.clear();
+        stack.clear();
+        if (reveal(x, y) && getAdjacentMines(x, y) == 0 && !isMine(x, y)) {
+            stack.add(x);
+            stack.add(y);
+        }
+        return expand();
+    }
+
+    public boolean hasPendingReveal() {
+        return !stack.isEmpty();
+    }
+
+    public CellIndexList continueReveal() {
+        revealed.clear();
+        return expand();
+    }
+
+    private CellIndexList expand() {
+        while (!stack.isEmpty() && revealed.size() / 2 < maxRevealCells) {
+            int cy = stack.removeLast();
+            int cx = stack.removeLast();
+            for (int nx = cx - 1; nx <= cx + 1; nx++) {
+                for (int ny = cy - 1; ny <= cy + 1; ny++) {
+                    // Neighbours of an empty cell are never mines
+                    if (reveal(nx, ny) && getAdjacentMines(nx, ny) == 0) {
+                        stack.add(nx);
+                        stack.add(ny);
+                    }
+                }
+            }
+        }
+        return revealed;
+    }
+
+    // Reveals one cell if it is hidden and unflagged; returns whether it changed.
+    private boolean reveal(int x, int y) {
+        Chunk chunk = chunkAt(x, y);
+        int local = localIndex(x, y);
+        byte cell = chunk.cells[local];
+        if ((cell & (REVEALED | FLAGGED)) != 0) {
+            return false;
+        }
+        chunk.cells[local] = (byte) (cell | REVEALED);
+        if ((cell & MINE) == 0) {
+            chunk.revealedSafe++;
+        } else {
+            chunk.revealedMines++;
+        }
+        revealed.add(x);
+        revealed.add(y);
+        updateEvictable(chunk);
+        return true;
+    }
+
+    public void setMaxRevealCells(int maxRevealCells) {
+        this.maxRevealCells = Math.max(1, maxRevealCells);
+    }
+
+    public long getSeed() { return seed; }
+    public int getLoadedChunkCount() { return chunks.size(); }
+    public int getResolvedChunkCount() { return resolvedChunkCount; }
+
+    // Whether the chunk holding (x, y) is in the cache; looking at a cell
+    // would load it.
+    boolean isLoaded(int x, int y) {
+        return chunks.containsKey(key(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT));
+    }
+
+    private byte cell(int x, int y) {
+        return chunkAt(x, y).cells[localIndex(x, y)];
+    }
+
+    private static int localIndex(int x, int y) {
+        return (x & CHUNK_MASK) << CHUNK_SHIFT | (y & CHUNK_MASK);
+    }
+
+    private static long key(int cx, int cy) {
+        return (long) cx << 32 | (cy & 0xFFFFFFFFL);
+    }
+
+    private Chunk chunkAt(int x, int y) {
+        return chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+    }
+
+    private Chunk chunk(int cx, int cy) {
+        long key = key(cx, cy);
+        if (lastChunk != null && lastKey == key) {
+            return lastChunk;
+        }
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = loadChunk(cx, cy);
+            chunks.put(key, chunk);
+            chunk.listedEvictable = chunk.isEvictable();
+            if (chunk.listedEvictable) {
+                evictable.add(key);
+            }
+            evict(key);
+        }
+        lastKey = key;
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    // Called after every change to a chunk; only touches the sets when the
+    // chunk moves between evictable and pinned.
+    private void updateEvictable(Chunk chunk) {
+        boolean evictableNow = chunk.isEvictable();
+        if (evictableNow == chunk.listedEvictable) {
+            return;
+        }
+        chunk.listedEvictable = evictableNow;
+        long key = key(chunk.cx, chunk.cy);
+        if (evictableNow) {
+            if (chunk.isResolved()) {
+                resolvedChunkCount++;
+            }
+            evictable.add(key);
+        } else {
+            evictable.remove(key);
+        }
+    }
+
+    private void evict(long keep) {
+        Iterator<Long> it = evictable.iterator();
+        while (chunks.size() > maxCachedChunks && it.hasNext()) {
+            long key = it.next();
+            if (key == keep) {
+                continue;
+            }
+            it.remove();
+            Chunk chunk = chunks.remove(key);
+            if (chunk.isResolved()) {
+                resolvedChunks.put(key, mineStates(chunk));
+            }
+            if (lastChunk != null && lastKey == key) {
+                lastChunk = null;
+            }
+        }
+    }
+
+    private Chunk loadChunk(int cx, int cy) {
+        Chunk chunk = new Chunk(cx, cy);
+        // Adjacency needs the mines of the eight surrounding chunks as well;
+        // only mines within one cell of this chunk contribute.
+        int originX = cx << CHUNK_SHIFT;
+        int originY = cy << CHUNK_SHIFT;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                generateMines(cx + dx, cy + dy);
+                int sourceX = (cx + dx) << CHUNK_SHIFT;
+                int sourceY = (cy + dy) << CHUNK_SHIFT;
+                for (int word = 0; word < mineBits.length; word++) {
+                    long bits = mineBits[word];
+                    while (bits != 0) {
+                        int local = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        int x = sourceX + (local >> CHUNK_SHIFT) - originX;
+                        int y = sourceY + (local & CHUNK_MASK) - originY;
+                        if (dx == 0 && dy == 0) {
+                            chunk.cells[local] |= MINE;
+                            chunk.mines++;
+                        }
+                        scatter(chunk, x, y);
+                    }
+                }
+            }
+        }
+
+        long[] states = resolvedChunks.remove(key(cx, cy));
+        if (states != null) {
+            int mine = 0;
+            for (int i = 0; i < CHUNK_CELLS; i++) {
+                if ((chunk.cells[i] & MINE) == 0) {
+                    chunk.cells[i] |= REVEALED;
+                    continue;
+                }
+                int state = mine >>> 5 < states.length ? (int) (states[mine >>> 5] >>> 2 * (mine & 31)) & 3 : 0;
+                if ((state & MINE_FLAGGED) != 0) {
+                    chunk.cells[i] |= FLAGGED;
+                    chunk.flags++;
+                } else if ((state & MINE_REVEALED) != 0) {
+                    chunk.cells[i] |= REVEALED;
+                    chunk.revealedMines++;
+                }
+                mine++;
+            }
+            chunk.revealedSafe = CHUNK_CELLS - chunk.mines;
+        }
+        return chunk;
+    }
+
+    // What loadChunk needs besides the seed to rebuild a resolved chunk.
+    private static long[] mineStates(Chunk chunk) {
+        long[] states = ALL_MINES_HIDDEN;
+        int mine = 0;
+        for (int i = 0; i < CHUNK_CELLS; i++) {
+            byte cell = chunk.cells[i];
+            if ((cell & MINE) == 0) {
+                continue;
+            }
+            int state = ((cell & FLAGGED) != 0 ? MINE_FLAGGED : 0) | ((cell & REVEALED) != 0 ? MINE_REVEALED : 0);
+            if (state != 0) {
+                if (states == ALL_MINES_HIDDEN) {
+                    states = new long[(chunk.mines + 31) / 32];
+                }
+                states[mine >>> 5] |= (long) state << 2 * (mine & 31);
+            }
+            mine++;
+        }
+        return states;
+    }
+
+    // Adds one to the count of every in-chunk neighbour of the mine at
+    // chunk-relative (x, y), which may lie just outside the chunk.
+    private static void scatter(Chunk chunk, int x, int y) {
+        int minX = Math.max(x - 1, 0);
+        int maxX = Math.min(x + 1, CHUNK_SIZE - 1);
+        int minY = Math.max(y - 1, 0);
+        int maxY = Math.min(y + 1, CHUNK_SIZE - 1);
+        for (int i = minX; i <= maxX; i++) {
+            for (int j = minY; j <= maxY; j++) {
+                if (i != x || j != y) {
+                    chunk.cells[i << CHUNK_SHIFT | j]++;
+                }
+            }
+        }
+    }
+
+    // Fills mineBits with the layout of chunk (cx, cy) using Floyd's sampling
+    // from a generator seeded by the board seed and the chunk coordinates.
+    // Cells around the origin, where the game starts, are kept clear.
+    private void generateMines(int cx, int cy) {
+        Arrays.fill(mineBits, 0L);
+        SplittableRandom random = new SplittableRandom(mix(seed ^ key(cx, cy) * 0x9E3779B97F4A7C15L));
+        for (int j = CHUNK_CELLS - minesPerChunk; j < CHUNK_CELLS; j++) {
+            int local = random.nextInt(j + 1);
+            if ((mineBits[local >>> 6] & 1L << local) != 0) {
+                local = j;
+            }
+            mineBits[local >>> 6] |= 1L << local;
+        }
+
+        for (int x = -SAFE_ZONE_RADIUS; x <= SAFE_ZONE_RADIUS; x++) {
+            for (int y = -SAFE_ZONE_RADIUS; y <= SAFE_ZONE_RADIUS; y++) {
+                if (x >> CHUNK_SHIFT == cx && y >> CHUNK_SHIFT == cy) {
+                    int local = localIndex(x, y);
+                    mineBits[local >>> 6] &= ~(1L << local);
+                }
+            }
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Chunk {
+        final int cx;
+        final int cy;
+        final byte[] cells = new byte[CHUNK_CELLS];
+        int mines;
+        int revealedSafe;
+        int revealedMines;
+        int flags;
+        boolean listedEvictable;
+
+        Chunk(int cx, int cy) {
+            this.cx = cx;
+            this.cy = cy;
+        }
+
+        boolean isResolved() {
+            return revealedSafe == CHUNK_CELLS - mines;
+        }
+
+        boolean isEvictable() {
+            boolean untouched = revealedSafe == 0 && revealedMines == 0 && flags == 0;
+            return untouched || isResolved();
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import log.EventLog;
+
+// An append-only record of a match, written as the session is played and
+// read back by replay, which feeds it through a fresh GameSession.
+//
+// The journal is a session listener. It writes the session's inputs - the
+// mine layout, moves, flags, reveal deltas from the host, clock ticks,
+// resets and restored games - and, as checks for the replay, the turn changes and outcomes
+// they led to. Records go into a buffer that is written to the file when
+// it fills up and whenever a game ends, so recording a move costs a few
+// buffer puts on the thread that made it. Nothing is written, and no file
+// created, until the first record.
+//
+// File format: a header (MAGIC, VERSION, start time in epoch millis, then
+// player count, board size, mine count and turn time as varints) followed
+// by records. Each record is a type byte, the microseconds since the
+// previous record as a varint and the record's fields, mostly zigzag
+// varints. A file cut short by a crash replays up to its last whole record.
+public class GameJournal implements GameSession.Listener, Closeable {
+    public static final int MAGIC = 0x4D534A4E; // "MSJN"
+    public static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte LAYOUT_SEED = 0;
+    private static final byte MINE_POSITIONS = 1;
+    private static final byte MOVE = 2;
+    private static final byte SUBMIT = 3;
+    private static final byte REVEAL_DELTA = 4;
+    private static final byte FLAG = 5;
+    private static final byte TICK = 6;
+    private static final byte TURN = 7;
+    private static final byte GAME_OVER = 8;
+    private static final byte RESET = 9;
+    private static final byte SNAPSHOT = 10;
+
+    private final Path file;
+    private final GameSession session;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private FileChannel channel;
+    private Thread shutdownHook;
+    private long lastRecordNanos;
+    private boolean closed;
+
+    // Starts recording the session into the given file, which must not
+    // exist yet.
+    public GameJournal(Path file, GameSession session) {
+        this.file = file;
+        this.session = session;
+        session.addListener(this);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // Inputs
+
+    @Override
+    public synchronized void minesPlaced(Board board) {
+        Board.LayoutSeed layout = board.getLayoutSeed();
+        if (layout != null) {
+            if (!begin(LAYOUT_SEED, 32)) {
+                return;
+            }
+            buffer.putLong(layout.seed);
+            putInt(layout.safeZoneRadius);
+            putInt(layout.firstClickX);
+            putInt(layout.firstClickY);
+            buffer.putLong(layout.layoutHash);
+        } else {
+            if (!begin(MINE_POSITIONS, 5 + 5 * board.getMineCount())) {
+                return;
+            }
+            putVarint(board.getMineCount());
+            int previous = -1;
+            for (int i = 0; i < board.getCellCount(); i++) {
+                if (board.isMine(i)) {
+                    putVarint(i - previous);
+                    previous = i;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void movePlayed(int player, int x, int y) {
+        if (!begin(MOVE, 15)) {
+            return;
+        }
+        putInt(player);
+        putInt(x);
+        putInt(y);
+    }
+
+    @Override
+    public synchronized void moveSubmitted(int player) {
+        if (!begin(SUBMIT, 5)) {
+            return;
+        }
+        putInt(player);
+    }
+
+    @Override
+    public synchronized void revealDeltaApplied(int player, int x, int y, RevealDelta delta, boolean endsTurn) {
+        int count = delta.getCellCount();
+        if (!begin(REVEAL_DELTA, 26 + 6 * count)) {
+            return;
+        }
+        putInt(player);
+        putInt(x);
+        putInt(y);
+        buffer.put((byte) (endsTurn ? 1 : 0));
+        putVarint(delta.getSize());
+        putVarint(count);
+        // Cells are in ascending order, so the gaps between them are small
+        int previous = -1;
+        for (int i = 0; i < count; i++) {
+            putVarint(delta.getCell(i) - previous);
+            previous = delta.getCell(i);
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.put((byte) delta.getValue(i));
+        }
+    }
+
+    @Override
+    public synchronized void flagToggled(int player, int x, int y) {
+        if (!begin(FLAG, 15)) {
+            return;
+        }
+        putInt(player);
+        putInt(x);
+        putInt(y);
+    }
+
+    @Override
+    public synchronized void clockTicked(int player, int secondsRemaining) {
+        if (!begin(TICK, 10)) {
+            return;
+        }
+        putInt(player);
+        putInt(secondsRemaining);
+    }
+
+    @Override
+    public synchronized void sessionReset(Board board) {
+        if (!begin(RESET, 0)) {
+            return;
+        }
+        flush();
+    }
+
+    // A restored game is recorded whole, see SnapshotCodec
+    @Override
+    public synchronized void sessionRestored(Board board) {
+        byte[] snapshot = SnapshotCodec.write(session);
+        if (!begin(SNAPSHOT, 5 + snapshot.length)) {
+            return;
+        }
+        putVarint(snapshot.length);
+        buffer.put(snapshot);
+        flush();
+    }
+
+    // Outcomes
+
+    @Override
+    public synchronized void turnChanged(int player) {
+        if (!begin(TURN, 5)) {
+            return;
+        }
+        putInt(player);
+    }
+
+    @Override
+    public synchronized void gameOver(int winner, GameSession.EndReason reason) {
+        if (!begin(GAME_OVER, 6)) {
+            return;
+        }
+        putInt(winner);
+        buffer.put((byte) reason.ordinal());
+        flush();
+    }
+
+    // Writes out what is buffered and closes the file. The journal records
+    // nothing more.
+    @Override
+    public void close() {
+        session.removeListener(this);
+        closeFile();
+        Thread hook;
+        synchronized (this) {
+            hook = shutdownHook;
+            shutdownHook = null;
+        }
+        if (hook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException e) {
+                // Already shutting down; the hook is what closed us
+            }
+        }
+    }
+
+    private synchronized void closeFile() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                EventLog.warn("journal.close_failed", "file", file, e);
+            }
+            EventLog.info("journal.closed", "file", file);
+        }
+    }
+
+    // Starts a record, making room for the type, the time and up to
+    // maxFields bytes of fields. Opens the file on the first record.
+    // Returns false once the journal has stopped recording.
+    private boolean begin(byte type, int maxFields) {
+        if (closed) {
+            return false;
+        }
+        if (channel == null && !openFile()) {
+            return false;
+        }
+        int needed = 1 + 10 + maxFields;
+        if (buffer.remaining() < needed) {
+            flush();
+            if (buffer.capacity() < needed) {
+                buffer = ByteBuffer.allocateDirect(needed);
+            }
+        }
+        long now = System.nanoTime();
+        buffer.put(type);
+        putVarint((int) Math.min(Integer.MAX_VALUE, (now - lastRecordNanos) / 1000));
+        lastRecordNanos = now;
+        return true;
+    }
+
+    private boolean openFile() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            fail(e);
+            return false;
+        }
+        lastRecordNanos = System.nanoTime();
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.putLong(System.currentTimeMillis());
+        putVarint(session.getPlayerCount());
+        putVarint(session.getBoardSize());
+        putVarint(session.getNumberOfMines());
+        putVarint(session.getTurnTime());
+
+        // A game still in progress when the application exits keeps its
+        // last moves
+        shutdownHook = new Thread(this::closeFile, "journal-close");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        EventLog.info("journal.opened", "file", file);
+        return true;
+    }
+
+    private void flush() {
+        if (channel == null || closed) {
+            buffer.clear();
+            return;
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+        buffer.clear();
+    }
+
+    // A journal that cannot be written stops recording; the game goes on.
+    private void fail(IOException e) {
+        EventLog.warn("journal.write_failed", "file", file, e);
+        closed = true;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already failing
+            }
+        }
+    }
+
+    private void putInt(int value) {
+        putVarint((value << 1) ^ (value >> 31));
+    }
+
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // Replay
+
+    // Plays a journal back through a new session, which calls the listener,
+    // if any, just as the recorded one called its own. In real time the
+    // records are spaced as they were recorded; otherwise they are played
+    // as fast as the session allows. Returns the session as the journal
+    // leaves it. Throws if the journal is not one, or if the game goes
+    // differently from how it was recorded.
+    public static GameSession replay(Path file, GameSession.Listener listener, boolean realTime) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        GameSession session;
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a game journal");
+            }
+            int version = in.get();
+            if (version != VERSION) {
+                throw new IOException("Journal version " + version + " is not supported, expected " + VERSION);
+            }
+            in.getLong(); // Start time, for reference
+            session = new GameSession(getVarint(in), getVarint(in), getVarint(in), getVarint(in));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException(file + " has no valid journal header", e);
+        }
+        if (listener != null) {
+            session.addListener(listener);
+        }
+
+        long start = System.nanoTime();
+        long elapsedMicros = 0;
+        int record = 0;
+        while (in.hasRemaining()) {
+            int recordStart = in.position();
+            record++;
+            try {
+                byte type = in.get();
+                elapsedMicros += getVarint(in);
+                if (realTime) {
+                    waitUntil(start + elapsedMicros * 1000);
+                }
+                if (!replayRecord(type, in, session)) {
+                    throw new IOException("Journal " + file + " diverges from the game at record " + record);
+                }
+            } catch (BufferUnderflowException e) {
+                // The last record was cut short, as by a crash mid-write
+                EventLog.warn("journal.truncated", "file", file, "offset", recordStart);
+                break;
+            } catch (IllegalArgumentException | IllegalStateException | IndexOutOfBoundsException e) {
+                throw new IOException("Malformed record " + record + " in journal " + file, e);
+            }
+        }
+        return session;
+    }
+
+    // Applies one record. Returns false if it is a check that fails.
+    private static boolean replayRecord(byte type, ByteBuffer in, GameSession session) throws IOException {
+        switch (type) {
+            case LAYOUT_SEED: {
+                long seed = in.getLong();
+                int radius = getInt(in);
+                int x = getInt(in);
+                int y = getInt(in);
+                long hash = in.getLong();
+                return session.placeMines(new Board.LayoutSeed(seed, session.getBoardSize(),
+                    session.getNumberOfMines(), radius, x, y, hash));
+            }
+            case MINE_POSITIONS: {
+                int count = getVarint(in);
+                List<Board.MinePosition> positions = new ArrayList<>(count);
+                Board board = session.getBoard();
+                int index = -1;
+                for (int i = 0; i < count; i++) {
+                    index += getVarint(in);
+                    positions.add(new Board.MinePosition(board.getX(index), board.getY(index)));
+                }
+                session.placeMinesFromPositions(positions);
+                return true;
+            }
+            case MOVE:
+                return session.reveal(getInt(in), getInt(in), getInt(in));
+            case SUBMIT:
+                return session.submitMove(getInt(in));
+            case REVEAL_DELTA: {
+                int player = getInt(in);
+                int x = getInt(in);
+                int y = getInt(in);
+                boolean endsTurn = in.get() != 0;
+                int size = getVarint(in);
+                int count = getVarint(in);
+                int[] cells = new int[count];
+                byte[] values = new byte[count];
+                int index = -1;
+                for (int i = 0; i < count; i++) {
+                    index += getVarint(in);
+                    cells[i] = index;
+                }
+                in.get(values);
+                session.applyRevealDelta(player, x, y, new RevealDelta(size, cells, values), endsTurn);
+                return true;
+            }
+            case FLAG:
+                return session.toggleFlag(getInt(in), getInt(in), getInt(in));
+            case TICK: {
+                int player = getInt(in);
+                int secondsRemaining = getInt(in);
+                session.tick();
+                return session.getTimeRemaining(player) == secondsRemaining;
+            }
+            case RESET:
+                session.reset();
+                return true;
+            case SNAPSHOT: {
+                byte[] snapshot = new byte[getVarint(in)];
+                in.get(snapshot);
+                SnapshotCodec.restore(snapshot, session);
+                return true;
+            }
+            case TURN:
+                return session.getCurrentPlayer() == getInt(in);
+            case GAME_OVER: {
+                int winner = getInt(in);
+                GameSession.EndReason reason = GameSession.EndReason.values()[in.get()];
+                if (reason == GameSession.EndReason.REPORTED) {
+                    session.declareWinner(winner);
+                }
+                return session.isGameOver() && session.getWinner() == winner;
+            }
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private static void waitUntil(long deadlineNanos) throws InterruptedIOException {
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(remaining / 1_000_000, (int) (remaining % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Replay interrupted");
+        }
+    }
+
+    private static int getInt(ByteBuffer in) {
+        int value = getVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 5 bytes");
+    }
+}
@@ -0,0 +1,325 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// One match, independent of any UI or network: the board, the players,
+// whose turn it is and each player's clock. Front ends drive it with moves
+// and clock ticks and learn what happened through Listener events, so the
+// same rules run behind the Swing client, a headless server or a benchmark.
+//
+// Besides what happened, listeners also hear every input the session was
+// given, in order, so that a GameJournal can record a match and play it
+// back through a fresh session.
+//
+// Players are seats numbered from 0, and seat 0 moves first. Every player
+// has a chess-style clock of turnTime seconds that only runs during their
+// own turns, once the first move of a two-player game has been made; a
+// player whose clock reaches zero loses.
+//
+// A session is not thread-safe. Each one should be driven from a single
+// thread, or under a lock of its own, and its listeners are called on that
+// thread.
+public class GameSession {
+    public static final int NO_PLAYER = -1;
+    public static final int DEFAULT_TURN_TIME = 60;
+    private static final int DEFAULT_SIZE = 10;
+    private static final int DEFAULT_MINES = 20;
+
+    public enum EndReason {
+        MINE,
+        CLEARED,
+        TIMEOUT,
+        // Decided elsewhere, e.g. by the peer that holds the mines
+        REPORTED
+    }
+
+    public interface Listener {
+        // Inputs: each is heard before its effects
+        default void minesPlaced(Board board) {}
+        default void movePlayed(int player, int x, int y) {}
+        default void moveSubmitted(int player) {}
+        default void revealDeltaApplied(int player, int x, int y, RevealDelta delta, boolean endsTurn) {}
+        default void flagToggled(int player, int x, int y) {}
+
+        // Outcomes
+        // The cells are in a list that is reused by the next move, so
+        // listeners should use them before returning. x and y are the cell
+        // that was played, or -1 for cells uncovered at the end of a game.
+        default void cellsRevealed(int player, int x, int y, CellIndexList cells) {}
+        default void turnChanged(int player) {}
+        default void clockTicked(int player, int secondsRemaining) {}
+        default void gameOver(int winner, EndReason reason) {}
+        default void sessionReset(Board board) {}
+        // A saved game was restored; for most listeners that is a reset
+        default void sessionRestored(Board board) { sessionReset(board); }
+    }
+
+    private final int playerCount;
+    private final int boardSize;
+    private final int numberOfMines;
+    private final int turnTime;
+    private final String[] playerNames;
+    private final int[] timeRemaining;
+    private final List<Listener> listeners = new ArrayList<>();
+    private final CellIndexList endCells = new CellIndexList();
+
+    private Board board;
+    private int currentPlayer;
+    private boolean clockRunning;
+    private boolean gameOver;
+    private int winner;
+
+    public GameSession(int playerCount) {
+        this(playerCount, DEFAULT_SIZE, DEFAULT_MINES, DEFAULT_TURN_TIME);
+    }
+
+    public GameSession(int playerCount, int boardSize, int numberOfMines, int turnTime) {
+        if (playerCount < 1) {
+            throw new IllegalArgumentException("A session needs at least one player");
+        }
+        this.playerCount = playerCount;
+        this.boardSize = boardSize;
+        this.numberOfMines = numberOfMines;
+        this.turnTime = turnTime;
+        this.playerNames = new String[playerCount];
+        this.timeRemaining = new int[playerCount];
+        startNewBoard();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Starts a new game on a fresh board with the same players.
+    public void reset() {
+        startNewBoard();
+        for (Listener listener : listeners) {
+            listener.sessionReset(board);
+        }
+    }
+
+    // Picks up a saved game (see SnapshotCodec) in place of the current one.
+    void restore(Board board, int currentPlayer, boolean clockRunning, boolean gameOver, int winner,
+            int[] timeRemaining) {
+        if (timeRemaining.length != playerCount) {
+            throw new IllegalArgumentException("A " + timeRemaining.length
+                + "-player game cannot be restored into a " + playerCount + "-player session");
+        }
+        this.board = board;
+        this.currentPlayer = currentPlayer;
+        this.clockRunning = clockRunning;
+        this.gameOver = gameOver;
+        this.winner = winner;
+        System.arraycopy(timeRemaining, 0, this.timeRemaining, 0, playerCount);
+        for (Listener listener : listeners) {
+            listener.sessionRestored(board);
+        }
+    }
+
+    private void startNewBoard() {
+        board = new Board(boardSize, numberOfMines);
+        currentPlayer = 0;
+        clockRunning = false;
+        gameOver = false;
+        winner = NO_PLAYER;
+        for (int i = 0; i < playerCount; i++) {
+            timeRemaining[i] = turnTime;
+        }
+    }
+
+    // Places the mines around the first click. Only the peer that owns the
+    // layout does this; others receive it through the board.
+    public void placeMines(int x, int y) {
+        if (board.areMinesPlaced()) {
+            return;
+        }
+        board.placeMines(x, y);
+        fireMinesPlaced();
+    }
+
+    // Regenerates the layout a peer placed, see Board.placeMines(LayoutSeed).
+    // Returns false if it does not match the peer's hash.
+    public boolean placeMines(Board.LayoutSeed layout) {
+        boolean placed = board.areMinesPlaced();
+        if (!board.placeMines(layout)) {
+            return false;
+        }
+        if (!placed) {
+            fireMinesPlaced();
+        }
+        return true;
+    }
+
+    // A layout given as its mines. No peer sends one any more; GameJournal
+    // records the layout this way and replays it through here.
+    public void placeMinesFromPositions(List<Board.MinePosition> positions) {
+        if (board.areMinesPlaced()) {
+            return;
+        }
+        board.placeMinesFromPositions(positions);
+        fireMinesPlaced();
+    }
+
+    private void fireMinesPlaced() {
+        for (Listener listener : listeners) {
+            listener.minesPlaced(board);
+        }
+    }
+
+    // Plays a move with the full rules: a mine loses the game, uncovering
+    // the last safe cell wins it, and otherwise the turn passes on. Returns
+    // false if the move is not allowed now, e.g. out of turn.
+    public boolean reveal(int player, int x, int y) {
+        if (!canMove(player) || !board.isValidPosition(x, y) || board.isRevealed(x, y)) {
+            return false;
+        }
+        if (!board.areMinesPlaced()) {
+            throw new IllegalStateException("Mines must be placed before revealing");
+        }
+        for (Listener listener : listeners) {
+            listener.movePlayed(player, x, y);
+        }
+
+        if (board.isMine(x, y)) {
+            endGame(otherPlayer(player), EndReason.MINE);
+            return true;
+        }
+        CellIndexList revealed = board.revealCell(x, y);
+        for (Listener listener : listeners) {
+            listener.cellsRevealed(player, x, y, revealed);
+        }
+        if (board.isCleared()) {
+            endGame(player, EndReason.CLEARED);
+            return true;
+        }
+        passTurn();
+        return true;
+    }
+
+    // Ends the player's turn without resolving the move here, for a peer
+    // that does not know the mines and waits to be told what it uncovered.
+    public boolean submitMove(int player) {
+        if (!canMove(player)) {
+            return false;
+        }
+        for (Listener listener : listeners) {
+            listener.moveSubmitted(player);
+        }
+        passTurn();
+        return true;
+    }
+
+    // Flags or unflags a covered cell. Flags are the player's own notes and
+    // do not use up a turn. Returns false if the cell cannot be flagged.
+    public boolean toggleFlag(int player, int x, int y) {
+        if (gameOver || !board.isValidPosition(x, y) || board.isRevealed(x, y)) {
+            return false;
+        }
+        for (Listener listener : listeners) {
+            listener.flagToggled(player, x, y);
+        }
+        board.toggleFlag(x, y);
+        return true;
+    }
+
+    // Shows cells uncovered on another peer's board. Set endsTurn when the
+    // delta is that player's move, rather than the outcome of one already
+    // submitted or the layout shown at the end of the game.
+    public void applyRevealDelta(int player, int x, int y, RevealDelta delta, boolean endsTurn) {
+        for (Listener listener : listeners) {
+            listener.revealDeltaApplied(player, x, y, delta, endsTurn);
+        }
+        endCells.clear();
+        delta.applyTo(board, endCells);
+        for (Listener listener : listeners) {
+            listener.cellsRevealed(player, x, y, endCells);
+        }
+        if (endsTurn && !gameOver && player == currentPlayer) {
+            passTurn();
+        }
+    }
+
+    // Records an outcome decided by another peer.
+    public void declareWinner(int winner) {
+        endGame(winner, EndReason.REPORTED);
+    }
+
+    // Advances the running clock by one second; callers tick once a second.
+    public void tick() {
+        if (!clockRunning || gameOver) {
+            return;
+        }
+        int player = currentPlayer;
+        timeRemaining[player]--;
+        for (Listener listener : listeners) {
+            listener.clockTicked(player, timeRemaining[player]);
+        }
+        if (timeRemaining[player] <= 0) {
+            endGame(otherPlayer(player), EndReason.TIMEOUT);
+        }
+    }
+
+    private boolean canMove(int player) {
+        return !gameOver && player == currentPlayer;
+    }
+
+    private void passTurn() {
+        if (playerCount < 2) {
+            return;
+        }
+        currentPlayer = otherPlayer(currentPlayer);
+        clockRunning = true;
+        for (Listener listener : listeners) {
+            listener.turnChanged(currentPlayer);
+        }
+    }
+
+    private int otherPlayer(int player) {
+        return playerCount < 2 ? NO_PLAYER : (player + 1) % playerCount;
+    }
+
+    // Ends the game and uncovers the remaining mines.
+    private void endGame(int winner, EndReason reason) {
+        if (gameOver) {
+            return;
+        }
+        gameOver = true;
+        clockRunning = false;
+        this.winner = winner;
+
+        endCells.clear();
+        for (int i = 0; i < board.getCellCount(); i++) {
+            if (board.isMine(i) && !board.isRevealed(i)) {
+                board.setRevealed(board.getX(i), board.getY(i), true);
+                endCells.add(i);
+            }
+        }
+        if (!endCells.isEmpty()) {
+            for (Listener listener : listeners) {
+                listener.cellsRevealed(NO_PLAYER, -1, -1, endCells);
+            }
+        }
+        for (Listener listener : listeners) {
+            listener.gameOver(winner, reason);
+        }
+    }
+
+    public Board getBoard() { return board; }
+    public int getBoardSize() { return boardSize; }
+    public int getNumberOfMines() { return numberOfMines; }
+    public int getPlayerCount() { return playerCount; }
+    public int getCurrentPlayer() { return currentPlayer; }
+    public boolean isPlayerTurn(int player) { return !gameOver && player == currentPlayer; }
+    public boolean isGameOver() { return gameOver; }
+    public int getWinner() { return winner; }
+    public int getTurnTime() { return turnTime; }
+    public int getTimeRemaining(int player) { return timeRemaining[player]; }
+    public boolean isClockRunning() { return clockRunning; }
+    public String getPlayerName(int player) { return playerNames[player]; }
+    public void setPlayerName(int player, String name) { playerNames[player] = name; }
+}
@@ -0,0 +1,51 @@
+package model;
+
+// What an observer needs to pick up a game in progress: the players, whose
+// turn it is, how the game ended if it has, and every revealed cell. The
+// mines under unrevealed cells are left out, so a snapshot is safe to send
+// to anyone.
+public class GameSnapshot {
+    private final int size;
+    private final int numberOfMines;
+    private final String[] playerNames;
+    private final int currentPlayer;
+    private final boolean gameOver;
+    private final int winner;
+    private final RevealDelta revealed;
+
+    public GameSnapshot(int size, int numberOfMines, String[] playerNames, int currentPlayer,
+            boolean gameOver, int winner, RevealDelta revealed) {
+        this.size = size;
+        this.numberOfMines = numberOfMines;
+        this.playerNames = playerNames;
+        this.currentPlayer = currentPlayer;
+        this.gameOver = gameOver;
+        this.winner = winner;
+        this.revealed = revealed;
+    }
+
+    public static GameSnapshot capture(GameSession session) {
+        Board board = session.getBoard();
+        CellIndexList cells = new CellIndexList();
+        for (int i = 0; i < board.getCellCount(); i++) {
+            if (board.isRevealed(i)) {
+                cells.add(i);
+            }
+        }
+        String[] names = new String[session.getPlayerCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = session.getPlayerName(i);
+        }
+        return new GameSnapshot(board.getSize(), board.getMineCount(), names, session.getCurrentPlayer(),
+            session.isGameOver(), session.getWinner(), RevealDelta.capture(board, cells));
+    }
+
+    public int getSize() { return size; }
+    public int getNumberOfMines() { return numberOfMines; }
+    public int getPlayerCount() { return playerNames.length; }
+    public String getPlayerName(int player) { return playerNames[player]; }
+    public int getCurrentPlayer() { return currentPlayer; }
+    public boolean isGameOver() { return gameOver; }
+    public int getWinner() { return winner; }
+    public RevealDelta getRevealed() { return revealed; }
+}
@@ -1,14 +1,22 @@
 package model;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import config.GameConfig;
 import network.GameClient;
 import network.GameServer;
 
+// The application's current match and how it is connected. The rules of
+// the match itself live in the GameSession.
 public class GameState {
+    private static final DateTimeFormatter JOURNAL_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
     private static GameState instance;
-    private Board board;
-    private boolean isGameOver;
-    private boolean isPlayerTurn;
-    private int currentPlayer;
+    private GameSession session;
+    private GameJournal journal;
     private boolean isMultiplayer;
     private boolean isHost;
     private GameServer server;
@@ -27,74 +35,47 @@ public class GameState {
         return instance;
     }
 
+    // Starts over with a fresh session; the connection and names are kept.
     public void resetGame() {
-        // Store multiplayer state before reset
-        boolean wasMultiplayer = isMultiplayer;
-        boolean wasHost = isHost;
-        GameServer savedServer = server;
-        GameClient savedClient = client;
-        String savedPlayerName = playerName;
-        String savedOpponentName = opponentName;
+        session = new GameSession(isMultiplayer ? 2 : 1);
+    }
 
-        // Reset game state
-        board = new Board();
-        isGameOver = false;
-        isPlayerTurn = wasHost; // Host plays first
-        currentPlayer = 1;
+    // Records the current session in a new journal file if a journal
+    // directory is configured, ending the previous recording.
+    public void startJournal() {
+        stopJournal();
+        String dir = GameConfig.getInstance().getJournalDir();
+        if (dir != null) {
+            Path file = Paths.get(dir, "match-" + LocalDateTime.now().format(JOURNAL_NAME) + ".msj");
+            journal = new GameJournal(file, session);
+        }
+    }
 
-        // Restore multiplayer state
-        isMultiplayer = wasMultiplayer;
-        isHost = wasHost;
-        server = savedServer;
-        client = savedClient;
-        playerName = savedPlayerName;
-        opponentName = savedOpponentName;
+    public void stopJournal() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
     }
 
     public void startMultiplayerGame(boolean asHost) {
-        resetGame();
         isMultiplayer = true;
         isHost = asHost;
-        isPlayerTurn = asHost; // Host plays first
+        resetGame();
     }
 
-    public boolean checkWinCondition() {
-        Cell[][] cells = board.getCells();
-        for (Cell[] row : cells) {
-            for (Cell cell : row) {
-                if (cell.isMine() && !cell.isFlagged()) {
-                    return false;
-                }
-                if (!cell.isMine() && !cell.isRevealed()) {
-                    return false;
-                }
-            }
-        }
-        return true;
+    // The host takes the first seat and so moves first.
+    public int getLocalPlayer() {
+        return isMultiplayer && !isHost ? 1 : 0;
     }
 
-    // Getters and setters
-    public Board getBoard() { return board; }
-    public boolean isGameOver() { return isGameOver; }
-    public void setGameOver(boolean gameOver) { isGameOver = gameOver; }
-    public boolean isPlayerTurn() { return isPlayerTurn; }
-    public void togglePlayerTurn() {
-        isPlayerTurn = !isPlayerTurn;
-        System.out.println("[Turn Debug] Turn toggled - Player: " +
-            (isHost ? "Host" : "Client") +
-            ", New Turn State: " + (isPlayerTurn ? "Yes" : "No"));
-    }
-    public void setPlayerTurn(boolean playerTurn) {
-        if (this.isPlayerTurn != playerTurn) {
-            System.out.println("[Turn Debug] Setting turn explicitly - Player: " +
-                (isHost ? "Host" : "Client") +
-                ", From: " + (this.isPlayerTurn ? "Yes" : "No") +
-                " To: " + (playerTurn ? "Yes" : "No"));
-            this.isPlayerTurn = playerTurn;
-        }
+    public int getRemotePlayer() {
+        return isMultiplayer ? 1 - getLocalPlayer() : GameSession.NO_PLAYER;
     }
-    public int getCurrentPlayer() { return currentPlayer; }
-    public void setCurrentPlayer(int player) { currentPlayer = player; }
+
+    // Getters and setters
+    public GameSession getSession() { return session; }
+    public Board getBoard() { return session.getBoard(); }
     public boolean isMultiplayer() { return isMultiplayer; }
     public boolean isHost() { return isHost; }
     public GameServer getServer() { return server; }
@@ -105,13 +86,4 @@ public class GameState {
     public void setPlayerName(String name) { this.playerName = name; }
     public String getOpponentName() { return opponentName; }
     public void setOpponentName(String name) { this.opponentName = name; }
-
-    public void applyMove(int x, int y, boolean isFlag) {
-        if (isFlag) {
-            board.toggleFlag(x, y);
-        } else {
-            board.revealCell(x, y);
-        }
-        togglePlayerTurn();
-    }
-}
\ No newline at end of file
+}
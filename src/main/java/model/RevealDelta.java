@@ -0,0 +1,69 @@
+package model;
+
+import java.util.Arrays;
+
+// The cells uncovered by one move, as seen by a player who does not know
+// where the mines are. Each cell carries what the display needs: its
+// adjacent mine count, or MINE for a mine shown at the end of the game.
+// Cells are kept in ascending index order, which lets the wire format
+// describe an opening as a few runs of consecutive indices.
+public class RevealDelta {
+    public static final int MINE = 9;
+
+    private final int size;
+    private final int[] cells;
+    private final byte[] values;
+
+    public RevealDelta(int size, int[] cells, byte[] values) {
+        if (cells.length != values.length) {
+            throw new IllegalArgumentException(cells.length + " cells but " + values.length + " values");
+        }
+        this.size = size;
+        this.cells = cells;
+        this.values = values;
+    }
+
+    // Captures the current contents of the given cells, which need not be
+    // sorted or revealed.
+    public static RevealDelta capture(Board board, CellIndexList indices) {
+        int[] cells = indices.toArray();
+        Arrays.sort(cells);
+        byte[] values = new byte[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            int index = cells[i];
+            values[i] = (byte) (board.isMine(index) ? MINE : board.getAdjacentMines(index));
+        }
+        return new RevealDelta(board.getSize(), cells, values);
+    }
+
+    // Reveals every cell of the delta on a board that has no mines of its
+    // own and records the indices that changed in the given list.
+    public void applyTo(Board board, CellIndexList changed) {
+        if (board.getSize() != size) {
+            throw new IllegalArgumentException("Delta for a " + size + "x" + size
+                + " board applied to a " + board.getSize() + "x" + board.getSize() + " board");
+        }
+        for (int i = 0; i < cells.length; i++) {
+            int value = values[i];
+            if (board.revealKnownCell(cells[i], value == MINE, value == MINE ? 0 : value)) {
+                changed.add(cells[i]);
+            }
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getCellCount() {
+        return cells.length;
+    }
+
+    public int getCell(int i) {
+        return cells[i];
+    }
+
+    public int getValue(int i) {
+        return values[i];
+    }
+}
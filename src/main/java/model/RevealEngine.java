@@ -0,0 +1,64 @@
+package model;
+
+// Iterative flood-fill used for every reveal on a Board. The work stack and
+// the result list are kept between calls, and each cell is pushed at most
+// once (it is marked revealed when pushed), so an opening of any size runs
+// without recursion and without per-cell allocation once the buffers have
+// grown to fit the board.
+public class RevealEngine {
+    private final CellIndexList stack = new CellIndexList();
+    private final CellIndexList revealed = new CellIndexList();
+
+    // Reveals (x, y) and, if it is an empty cell, the whole connected opening
+    // around it. Returns the indices of the cells that changed, in reveal
+    // order. The returned list is owned by the engine and is only valid
+    // until the next call.
+    public CellIndexList reveal(Board board, int x, int y) {
+        revealed.clear();
+        if (!board.isValidPosition(x, y)) {
+            return revealed;
+        }
+
+        int start = board.index(x, y);
+        if (board.isRevealed(start) || board.isFlagged(start)) {
+            return revealed;
+        }
+
+        board.markRevealed(start);
+        revealed.add(start);
+        if (board.isMine(start) || board.getAdjacentMines(start) != 0) {
+            return revealed;
+        }
+
+        int size = board.getSize();
+        stack.clear();
+        stack.add(start);
+        while (!stack.isEmpty()) {
+            int current = stack.removeLast();
+            int cx = current / size;
+            int cy = current % size;
+
+            int minX = Math.max(cx - 1, 0);
+            int maxX = Math.min(cx + 1, size - 1);
+            int minY = Math.max(cy - 1, 0);
+            int maxY = Math.min(cy + 1, size - 1);
+            for (int nx = minX; nx <= maxX; nx++) {
+                int rowStart = nx * size;
+                for (int ny = minY; ny <= maxY; ny++) {
+                    int neighbour = rowStart + ny;
+                    if (board.isRevealed(neighbour) || board.isFlagged(neighbour)) {
+                        continue;
+                    }
+                    // Neighbours of an empty cell can never be mines, so every
+                    // cell reached here is safe to reveal.
+                    board.markRevealed(neighbour);
+                    revealed.add(neighbour);
+                    if (board.getAdjacentMines(neighbour) == 0) {
+                        stack.add(neighbour);
+                    }
+                }
+            }
+        }
+        return revealed;
+    }
+}
@@ -0,0 +1,385 @@
+package model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Binary save format for a game in progress: the board and everything
+// GameSession keeps about the players and turns, so that restoring it
+// picks the game up exactly where it was. It is also the payload that
+// resynchronizes a peer whose board has drifted from the host's.
+//
+// The header holds MAGIC, VERSION, a flags byte, then as varints the board
+// size, mine count, turn time and player count, each player's name and
+// seconds left, the current player and winner (zigzag) and a state byte.
+// The body is three bit planes - mines, revealed, flagged - of one bit per
+// cell, lowest bit first. A board whose mines were never placed, as on a
+// fog-of-war client, knows only its revealed cells, so the body adds their
+// adjacency counts, a nibble each. The mine plane is close to random and
+// deflate would gain little on it for most of the time taken, so only the
+// rest of a large body is deflated: mostly empty planes that shrink to
+// almost nothing. A 1000x1000 board comes to about 130 KB.
+public final class SnapshotCodec {
+    public static final int MAGIC = 0x4D535353; // "MSSS"
+    public static final int VERSION = 1;
+    // Bodies this big or bigger are deflated by write(session)
+    public static final int COMPRESS_MIN_BYTES = 1024;
+
+    private static final int DEFLATED = 1;
+    private static final int MINES_PLACED = 2;
+    private static final int CLOCK_RUNNING = 1;
+    private static final int GAME_OVER = 2;
+
+    private SnapshotCodec() {}
+
+    public static byte[] write(GameSession session) {
+        Board board = session.getBoard();
+        return write(session, 3 * planeLength(board.getCellCount()) >= COMPRESS_MIN_BYTES);
+    }
+
+    public static byte[] write(GameSession session, boolean compress) {
+        Board board = session.getBoard();
+        int cellCount = board.getCellCount();
+        int planeLength = planeLength(cellCount);
+        boolean placed = board.areMinesPlaced();
+
+        // Body: the planes, then the known counts of a board without mines
+        byte[] mines = new byte[planeLength];
+        byte[] revealed = new byte[planeLength];
+        byte[] flagged = new byte[planeLength];
+        board.writePlanes(mines, revealed, flagged);
+        int revealedCount = 0;
+        if (!placed) {
+            for (byte bits : revealed) {
+                revealedCount += Integer.bitCount(bits & 0xFF);
+            }
+        }
+        byte[] body = new byte[3 * planeLength + (revealedCount + 1) / 2];
+        System.arraycopy(mines, 0, body, 0, planeLength);
+        System.arraycopy(revealed, 0, body, planeLength, planeLength);
+        System.arraycopy(flagged, 0, body, 2 * planeLength, planeLength);
+        if (!placed) {
+            int nibble = 6 * planeLength;
+            for (int i = 0; i < cellCount; i++) {
+                if (board.isRevealed(i)) {
+                    body[nibble / 2] |= board.getAdjacentMines(i) << (4 * (nibble & 1));
+                    nibble++;
+                }
+            }
+        }
+
+        byte[] payload = body;
+        if (compress) {
+            byte[] deflated = deflate(body, planeLength, body.length - planeLength);
+            payload = Arrays.copyOf(body, planeLength + deflated.length);
+            System.arraycopy(deflated, 0, payload, planeLength, deflated.length);
+        }
+
+        int players = session.getPlayerCount();
+        byte[][] names = new byte[players][];
+        int headerLength = 4 + 1 + 1 + 5 * 6 + 1 + 5 * players * 2;
+        for (int i = 0; i < players; i++) {
+            String name = session.getPlayerName(i);
+            names[i] = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+            headerLength += names[i] == null ? 0 : names[i].length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(headerLength + 5 + payload.length);
+        out.putInt(MAGIC);
+        out.put((byte) VERSION);
+        out.put((byte) ((compress ? DEFLATED : 0) | (placed ? MINES_PLACED : 0)));
+        putVarint(out, board.getSize());
+        putVarint(out, session.getNumberOfMines());
+        putVarint(out, session.getTurnTime());
+        putVarint(out, players);
+        for (int i = 0; i < players; i++) {
+            if (names[i] == null) {
+                putVarint(out, 0);
+            } else {
+                putVarint(out, names[i].length + 1);
+                out.put(names[i]);
+            }
+            putVarint(out, session.getTimeRemaining(i));
+        }
+        putVarint(out, zigzag(session.getCurrentPlayer()));
+        putVarint(out, zigzag(session.getWinner()));
+        out.put((byte) ((session.isClockRunning() ? CLOCK_RUNNING : 0) | (session.isGameOver() ? GAME_OVER : 0)));
+        putVarint(out, body.length);
+        out.put(payload);
+        byte[] bytes = new byte[out.position()];
+        out.flip();
+        out.get(bytes);
+        return bytes;
+    }
+
+    // A new session holding the saved game, with no listeners yet.
+    public static GameSession read(byte[] data) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        Header header = readHeader(in);
+        GameSession session = new GameSession(header.players, header.size, header.numberOfMines, header.turnTime);
+        restore(in, header, session);
+        return session;
+    }
+
+    // Replaces the session's game with the saved one. The session keeps its
+    // listeners, which hear of it through sessionRestored.
+    public static void restore(byte[] data, GameSession session) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        Header header = readHeader(in);
+        if (header.players != session.getPlayerCount()) {
+            throw new IOException("Snapshot of a " + header.players + "-player game cannot be restored into a "
+                + session.getPlayerCount() + "-player session");
+        }
+        // The session starts its next game from its own settings
+        if (header.size != session.getBoardSize() || header.numberOfMines != session.getNumberOfMines()) {
+            throw new IOException("Snapshot of a " + header.size + "x" + header.size + " board with "
+                + header.numberOfMines + " mines cannot be restored into a " + session.getBoardSize() + "x"
+                + session.getBoardSize() + " session with " + session.getNumberOfMines() + " mines");
+        }
+        restore(in, header, session);
+    }
+
+    public static void save(GameSession session, Path file) throws IOException {
+        Files.write(file, write(session));
+    }
+
+    public static GameSession load(Path file) throws IOException {
+        return read(Files.readAllBytes(file));
+    }
+
+    private static final class Header {
+        int flags;
+        int size;
+        int numberOfMines;
+        int turnTime;
+        int players;
+        String[] names;
+        int[] timeRemaining;
+        int currentPlayer;
+        int winner;
+        int state;
+        int bodyLength;
+    }
+
+    private static Header readHeader(ByteBuffer in) throws IOException {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a game snapshot");
+            }
+            int version = in.get();
+            if (version != VERSION) {
+                throw new IOException("Snapshot version " + version + " is not supported, expected " + VERSION);
+            }
+            Header header = new Header();
+            header.flags = in.get();
+            if ((header.flags & ~(DEFLATED | MINES_PLACED)) != 0) {
+                throw new IOException("Snapshot has unknown flags " + header.flags);
+            }
+            header.size = getVarint(in, 1, (int) Math.sqrt(Integer.MAX_VALUE / 2), "board size");
+            header.numberOfMines = getVarint(in, 0, header.size * header.size, "mine count");
+            header.turnTime = getVarint(in, 0, Integer.MAX_VALUE, "turn time");
+            // Every player takes at least two bytes, a name and a time
+            header.players = getVarint(in, 1, in.remaining() / 2, "player count");
+            header.names = new String[header.players];
+            header.timeRemaining = new int[header.players];
+            for (int i = 0; i < header.players; i++) {
+                int length = getVarint(in, 0, in.remaining() + 1, "name length");
+                if (length > 0) {
+                    byte[] name = new byte[length - 1];
+                    in.get(name);
+                    header.names[i] = new String(name, StandardCharsets.UTF_8);
+                }
+                header.timeRemaining[i] = getVarint(in, 0, Integer.MAX_VALUE, "time remaining");
+            }
+            header.currentPlayer = unzigzag(getVarint(in));
+            if (header.currentPlayer < 0 || header.currentPlayer >= header.players) {
+                throw new IOException("Snapshot claims current player " + header.currentPlayer);
+            }
+            header.winner = unzigzag(getVarint(in));
+            if (header.winner < GameSession.NO_PLAYER || header.winner >= header.players) {
+                throw new IOException("Snapshot claims winner " + header.winner);
+            }
+            header.state = in.get();
+            if ((header.state & ~(CLOCK_RUNNING | GAME_OVER)) != 0) {
+                throw new IOException("Snapshot has unknown state " + header.state);
+            }
+            header.bodyLength = getVarint(in);
+            // Checked against what the data holds before the caller builds a
+            // board of this size. Only the rest of a deflated body can be
+            // larger than what is left.
+            int cellCount = header.size * header.size;
+            int planeLength = planeLength(cellCount);
+            if (header.bodyLength < 3 * planeLength || header.bodyLength > 3 * planeLength + (cellCount + 1) / 2) {
+                throw new IOException("Snapshot body of " + header.bodyLength + " bytes does not fit a "
+                    + header.size + "x" + header.size + " board");
+            }
+            int stored = (header.flags & DEFLATED) != 0 ? planeLength : header.bodyLength;
+            if (stored > in.remaining()) {
+                throw new IOException("Snapshot body of " + header.bodyLength + " bytes, "
+                    + in.remaining() + " bytes left");
+            }
+            return header;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated or malformed snapshot header", e);
+        }
+    }
+
+    private static void restore(ByteBuffer in, Header header, GameSession session) throws IOException {
+        int cellCount = header.size * header.size;
+        int planeLength = planeLength(cellCount);
+        boolean placed = (header.flags & MINES_PLACED) != 0;
+        byte[] body = new byte[header.bodyLength];
+        try {
+            if ((header.flags & DEFLATED) != 0) {
+                in.get(body, 0, planeLength);
+                inflate(in, body, planeLength);
+            } else {
+                in.get(body);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot body", e);
+        }
+
+        byte[] mines = new byte[planeLength];
+        byte[] revealed = new byte[planeLength];
+        byte[] flagged = new byte[planeLength];
+        System.arraycopy(body, 0, mines, 0, planeLength);
+        System.arraycopy(body, planeLength, revealed, 0, planeLength);
+        System.arraycopy(body, 2 * planeLength, flagged, 0, planeLength);
+        checkPlane(mines, cellCount, "mine");
+        checkPlane(revealed, cellCount, "revealed");
+        checkPlane(flagged, cellCount, "flagged");
+        int mineCount = 0;
+        for (int i = 0; i < planeLength; i++) {
+            mineCount += Integer.bitCount(mines[i] & 0xFF);
+            // Without a layout the only mines known are the revealed ones
+            if (!placed && (mines[i] & ~revealed[i]) != 0) {
+                throw new IOException("Snapshot has covered mines on a board without a layout");
+            }
+        }
+        // Placement leaves the first click clear, so a board too small for
+        // its mines holds one fewer than it has cells
+        int expectedMines = Math.min(header.numberOfMines, cellCount - 1);
+        if (placed ? mineCount != expectedMines : mineCount > header.numberOfMines) {
+            throw new IOException("Snapshot has " + mineCount + " mines, expected "
+                + (placed ? "" : "at most ") + (placed ? expectedMines : header.numberOfMines));
+        }
+        byte[] counts = null;
+        if (!placed) {
+            counts = new byte[cellCount];
+            int nibble = 6 * planeLength;
+            for (int i = 0; i < cellCount; i++) {
+                if ((revealed[i >>> 3] & (1 << (i & 7))) != 0) {
+                    if (nibble / 2 >= body.length) {
+                        throw new IOException("Snapshot is missing adjacency counts");
+                    }
+                    counts[i] = (byte) ((body[nibble / 2] >> (4 * (nibble & 1))) & 0x0F);
+                    if (counts[i] > 8) {
+                        throw new IOException("Snapshot gives cell " + i + " " + counts[i] + " adjacent mines");
+                    }
+                    nibble++;
+                }
+            }
+        }
+
+        for (int i = 0; i < header.players; i++) {
+            session.setPlayerName(i, header.names[i]);
+        }
+        Board board = new Board(header.size, header.numberOfMines);
+        board.readPlanes(mines, revealed, flagged, placed, counts);
+        session.restore(board, header.currentPlayer, (header.state & CLOCK_RUNNING) != 0,
+            (header.state & GAME_OVER) != 0, header.winner, header.timeRemaining);
+    }
+
+    // The last byte of a plane may hold bits past the end of the board,
+    // which must be clear.
+    private static void checkPlane(byte[] plane, int cellCount, String name) throws IOException {
+        if ((cellCount & 7) != 0 && (plane[plane.length - 1] & 0xFF) >>> (cellCount & 7) != 0) {
+            throw new IOException("Snapshot " + name + " plane has bits past the last of " + cellCount + " cells");
+        }
+    }
+
+    private static byte[] deflate(byte[] body, int offset, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body, offset, length);
+            deflater.finish();
+            byte[] out = new byte[length / 8 + 64];
+            int written = 0;
+            while (!deflater.finished()) {
+                if (written == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                written += deflater.deflate(out, written, out.length - written);
+            }
+            return Arrays.copyOf(out, written);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void inflate(ByteBuffer in, byte[] body, int offset) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in.array(), in.arrayOffset() + in.position(), in.remaining());
+            int length = offset;
+            while (length < body.length) {
+                int n = inflater.inflate(body, length, body.length - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Snapshot body inflates to " + length + " bytes, expected " + body.length);
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt snapshot body", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int planeLength(int cellCount) {
+        return (cellCount + 7) / 8;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in, int min, int max, String what) throws IOException {
+        int value = getVarint(in);
+        if (value < min || value > max) {
+            throw new IOException("Snapshot claims " + what + " " + Integer.toUnsignedString(value));
+        }
+        return value;
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 5 bytes");
+    }
+}
@@ -0,0 +1,64 @@
+package network;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import config.GameConfig;
+import log.EventLog;
+
+// Creates the executors that run connection handlers and reader loops.
+//
+// By default every task gets a pooled platform thread, so each blocked read
+// pins one OS thread. With GameConfig.isVirtualThreads() on a JDK that has
+// virtual threads (21+), every task gets its own virtual thread instead: the
+// blocking code stays as it is, but an idle connection costs a few hundred
+// bytes of heap rather than a thread stack. The JDK 21 API is looked up
+// reflectively so the default build still targets Java 11.
+public final class ConnectionExecutors {
+    private static final MethodHandle NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+    // Runs periodic connection chores such as pings. Tasks only queue
+    // messages, so one thread serves every connection.
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "connection-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ConnectionExecutors() {}
+
+    public static ExecutorService newExecutor() {
+        if (GameConfig.getInstance().isVirtualThreads()) {
+            if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+                try {
+                    return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invokeExact();
+                } catch (Throwable e) {
+                    EventLog.warn("executor.virtual_threads_failed", e);
+                }
+            } else {
+                EventLog.warn("executor.virtual_threads_unavailable", "java", System.getProperty("java.version"));
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    public static ScheduledExecutorService timer() {
+        return TIMER;
+    }
+
+    public static boolean isVirtualThreadsAvailable() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    private static MethodHandle findVirtualThreadExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class,
+                "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -1,19 +1,33 @@
 package network;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import config.GameConfig;
+import log.EventLog;
+
+// The joining player's end of a two-player game. The game lives in a
+// ResumableSession rather than in the socket: when the socket drops, the
+// client keeps reconnecting for the resume window and, once the host takes
+// it back, each side resends what the other missed. Moves made in the
+// meantime are kept and go out with the rest.
 public class GameClient {
-    private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private static final int RECONNECT_DELAY_MILLIS = 250;
+
     private final ExecutorService executor;
+    // Whether the session is alive, not whether a socket is open right now
     private final AtomicBoolean isConnected;
+    private final ResumableSession session = new ResumableSession(null);
+    // The connection messages go out on, null while reconnecting; written
+    // while holding the session's lock
+    private volatile SocketConnection connection;
+    private volatile SocketConnection lastConnection;
+    private volatile String host;
+    private volatile int port;
     private MessageHandler messageHandler;
 
     public interface MessageHandler {
@@ -21,119 +35,247 @@ public class GameClient {
     }
 
     public GameClient(String host, int port) {
-        this.executor = Executors.newCachedThreadPool();
+        this.executor = ConnectionExecutors.newExecutor();
         this.isConnected = new AtomicBoolean(false);
-        System.out.println("GameClient created for " + host + ":" + port);
     }
 
     public void setMessageHandler(MessageHandler handler) {
         this.messageHandler = handler;
-        System.out.println("Message handler set for client");
     }
 
     public void connect(String host, int port) throws IOException {
         if (isConnected.get()) {
-            System.out.println("Client already connected");
+            EventLog.debug("client.already_connected");
             return;
         }
 
+        this.host = host;
+        this.port = port;
         try {
-            System.out.println("Attempting to connect to " + host + ":" + port);
-            socket = new Socket(host, port);
-
-            // Create streams in the correct order
-            out = new ObjectOutputStream(socket.getOutputStream());
-            out.flush(); // Important: flush the header
-            in = new ObjectInputStream(socket.getInputStream());
-
+            EventLog.info("client.connecting", "host", host, "port", port);
             isConnected.set(true);
-            System.out.println("Successfully connected to server at " + host + ":" + port);
-
-            // Start message receiving thread
-            executor.submit(this::receiveMessages);
+            openConnection(0);
+            EventLog.info("client.connected", "host", host, "port", port);
         } catch (IOException e) {
-            System.err.println("Failed to connect to server: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.warn("client.connect_failed", "host", host, e);
             disconnect();
             throw e;
         }
     }
 
-    private void receiveMessages() {
-        System.out.println("Starting message receiving thread");
+    // Opens a socket to the server and asks for the session back, or for a
+    // new one the first time. A timeout of 0 connects without one.
+    private void openConnection(int timeoutMillis) throws IOException {
+        Socket socket = new Socket();
         try {
-            while (isConnected.get() && !socket.isClosed()) {
-                try {
-                    System.out.println("Waiting for message from server...");
-                    GameMessage message = (GameMessage) in.readObject();
-                    System.out.println("Received message of type: " + message.getType() +
-                        (message.getType() == GameMessage.MessageType.MOVE ?
-                        " at position (" + message.getX() + "," + message.getY() + ")" : ""));
-
-                    if (messageHandler != null) {
-                        System.out.println("Forwarding message to handler");
-                        messageHandler.onMessageReceived(message);
-                    } else {
-                        System.out.println("No message handler set!");
-                    }
-                } catch (IOException e) {
-                    if (isConnected.get()) {
-                        System.err.println("Error reading message: " + e.getMessage());
-                        e.printStackTrace();
-                    }
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        SocketConnection conn = SocketConnection.open(socket, "server " + host + ":" + port, executor);
+        String token = session.getToken();
+        conn.send(new GameMessage(GameMessage.MessageType.RESUME, token, session.getReceivedSequence()));
+        if (token == null) {
+            // Nothing to resend on a new session, so it can be used at once
+            synchronized (session) {
+                connection = conn;
+            }
+        }
+        lastConnection = conn;
+        conn.startPinging();
+        executor.submit(() -> receiveMessages(conn));
+    }
+
+    private void receiveMessages(SocketConnection conn) {
+        boolean serverLeft = false;
+        boolean rejected = false;
+        try {
+            while (isConnected.get() && conn.isOpen()) {
+                GameMessage message = conn.read();
+                if (message == null) {
+                    EventLog.info("server.closed");
                     break;
-                } catch (ClassNotFoundException e) {
-                    System.err.println("Error deserializing message: " + e.getMessage());
-                    e.printStackTrace();
                 }
+                if (EventLog.DEBUG) {
+                    EventLog.debug("message.received", "type", message.getType(),
+                        "x", message.getX(), "y", message.getY());
+                }
+                if (conn.handleProbe(message)) {
+                    continue;
+                }
+                if (message.getType() == GameMessage.MessageType.RESUME) {
+                    if (!resume(conn, message)) {
+                        rejected = true;
+                        break;
+                    }
+                    continue;
+                }
+
+                if (!session.recordReceived(message)) {
+                    // Replayed after a resume, but it got through before
+                    continue;
+                }
+                if (message.getType() == GameMessage.MessageType.DISCONNECT) {
+                    serverLeft = true;
+                }
+                if (messageHandler != null) {
+                    messageHandler.onMessageReceived(message);
+                } else {
+                    EventLog.warn("message.unhandled", "type", message.getType());
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            EventLog.warn("server.idle_timeout", "idleMillis", GameConfig.getInstance().getIdleTimeoutMillis());
+        } catch (IOException e) {
+            if (isConnected.get() && conn.isOpen()) {
+                EventLog.warn("message.read_failed", e);
             }
         } finally {
-            System.out.println("Message receiving thread ending");
-            disconnect();
+            EventLog.debug("client.reader_ended");
+            conn.close();
+            synchronized (session) {
+                if (connection == conn) {
+                    connection = null;
+                }
+            }
+            if (isConnected.get() && !serverLeft) {
+                if (rejected) {
+                    endSession();
+                } else {
+                    connectionLost();
+                }
+            } else {
+                disconnect();
+            }
         }
     }
 
-    public synchronized void sendMessage(GameMessage message) {
+    // The server's answer to our RESUME. On a new session it just carries
+    // the token; on a resumed one, how much of what we sent got through, so
+    // we can resend the rest before anything new. Returns false if the
+    // server no longer has our session.
+    private boolean resume(SocketConnection conn, GameMessage reply) {
+        synchronized (session) {
+            String token = session.getToken();
+            if (token == null) {
+                session.setToken(reply.getText());
+                EventLog.debug("session.started", "token", reply.getText());
+                return reply.getText() != null;
+            }
+            if (!token.equals(reply.getText()) || !session.canResumeFrom(reply.getSequence())) {
+                EventLog.warn("session.resume_failed", "server", conn.getName());
+                return false;
+            }
+            for (GameMessage message : session.sentAfter(reply.getSequence())) {
+                conn.send(message);
+            }
+            connection = conn;
+            EventLog.info("session.resumed", "server", conn.getName(),
+                "replayed", session.getSentSequence() - reply.getSequence());
+            return true;
+        }
+    }
+
+    // The socket went without the server saying goodbye. Keep trying to get
+    // the session back until the resume window runs out.
+    private void connectionLost() {
+        int window = GameConfig.getInstance().getResumeWindowMillis();
+        if (window <= 0 || session.getToken() == null) {
+            endSession();
+            return;
+        }
+        EventLog.info("session.suspended", "windowMillis", window);
+        long deadline = System.nanoTime() + window * 1_000_000L;
+        while (isConnected.get()) {
+            long remainingMillis = (deadline - System.nanoTime()) / 1_000_000L;
+            if (remainingMillis <= 0) {
+                break;
+            }
+            try {
+                openConnection((int) remainingMillis);
+                return;
+            } catch (IOException e) {
+                EventLog.debug("client.reconnect_failed", "host", host, "reason", e.getMessage());
+            }
+            try {
+                Thread.sleep(Math.min(RECONNECT_DELAY_MILLIS, remainingMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (isConnected.get()) {
+            EventLog.info("session.expired");
+            endSession();
+        }
+    }
+
+    // Gives up on the session and tells the game the server has gone,
+    // rather than leave it waiting for a move.
+    private void endSession() {
+        disconnect();
+        if (messageHandler != null) {
+            messageHandler.onMessageReceived(new GameMessage(GameMessage.MessageType.DISCONNECT));
+        }
+    }
+
+    // Queues the message for the writer and returns without touching the
+    // socket, so it is safe to call from the Swing thread. While
+    // reconnecting, messages are only kept for replay.
+    public void sendMessage(GameMessage message) {
         if (!isConnected.get()) {
-            System.err.println("Cannot send message: not connected to server");
+            EventLog.warn("message.not_sent", "type", message.getType(), "reason", "not connected");
             return;
         }
 
-        try {
-            if (out != null && socket != null && !socket.isClosed()) {
-                System.out.println("Sending message of type: " + message.getType());
-                out.writeObject(message);
-                out.flush();
-                out.reset(); // Reset the stream cache
-                System.out.println("Message sent successfully");
-            } else {
-                System.err.println("Cannot send message: connection closed");
+        synchronized (session) {
+            if (ResumableSession.isSequenced(message)) {
+                message = session.recordSent(message);
+            }
+            SocketConnection conn = connection;
+            if (conn == null) {
+                EventLog.debug("message.buffered", "type", message.getType());
+                return;
+            }
+            if (EventLog.DEBUG) {
+                EventLog.debug("message.sent", "type", message.getType(), "x", message.getX(), "y", message.getY());
+            }
+            if (!conn.send(message)) {
+                EventLog.warn("message.not_sent", "type", message.getType(), "queue", conn.getOutboundQueue());
             }
-        } catch (IOException e) {
-            System.err.println("Error sending message: " + e.getMessage());
-            e.printStackTrace();
-            disconnect();
         }
     }
 
     public void disconnect() {
-        System.out.println("Disconnecting client");
+        EventLog.info("client.disconnecting");
         isConnected.set(false);
-        try {
-            if (in != null) in.close();
-            if (out != null) out.close();
-            if (socket != null) {
-                socket.close();
-                socket = null;
-            }
-        } catch (IOException e) {
-            System.err.println("Error closing connection: " + e.getMessage());
-            e.printStackTrace();
+        synchronized (session) {
+            connection = null;
+        }
+        // Lets what is already queued, such as a DISCONNECT, reach the
+        // server; this is also the connection still waiting to resume
+        SocketConnection conn = lastConnection;
+        if (conn != null) {
+            conn.close();
         }
         executor.shutdown();
     }
 
+    // Round-trip times on the current or last connection, or null before
+    // connecting.
+    public LatencyStats getLatencyStats() {
+        SocketConnection conn = lastConnection;
+        return conn != null ? conn.getLatencyStats() : null;
+    }
+
+    // Queue depth and time-to-wire figures, or null before connecting.
+    public OutboundQueue getOutboundQueue() {
+        SocketConnection conn = lastConnection;
+        return conn != null ? conn.getOutboundQueue() : null;
+    }
+
     public boolean isConnected() {
-        return isConnected.get() && socket != null && !socket.isClosed();
+        return isConnected.get();
     }
-}
\ No newline at end of file
+}
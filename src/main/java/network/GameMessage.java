@@ -1,40 +1,74 @@
 package network;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.Serializable;
 import java.util.List;
 
+import model.Board.LayoutSeed;
 import model.Board.MinePosition;
+import model.GameSnapshot;
+import model.RevealDelta;
 
-public class GameMessage implements Serializable {
-    private static final long serialVersionUID = 1L;
-
+// Messages travel in the binary format defined by MessageCodec. Its type
+// byte is the ordinal of MessageType, so new types go at the end.
+public class GameMessage {
     public enum MessageType {
         MOVE,
         GAME_OVER,
         DISCONNECT,
         RESET_REQUEST,
         PLAYER_JOINED,
-        MINE_POSITIONS
+        // No longer sent, RESYNC having replaced it, but kept so that the
+        // type bytes after it keep their values. MessageCodecBenchmark still
+        // measures the layout encoding.
+        MINE_POSITIONS,
+        BOARD_SEED,
+        LAYOUT_REQUEST,
+        REVEAL_DELTA,
+        CREATE_ROOM,
+        JOIN_ROOM,
+        ROOM_JOINED,
+        ROOM_ERROR,
+        WATCH_ROOM,
+        SNAPSHOT,
+        PING,
+        PONG,
+        RESUME,
+        RESYNC
     }
 
     private final MessageType type;
     private final int x;
     private final int y;
     private final boolean isFlag;
-    private final String playerName;
+    // The player name of PLAYER_JOINED, the room name of CREATE_ROOM,
+    // JOIN_ROOM and WATCH_ROOM, the reason given by ROOM_ERROR or the
+    // session token of RESUME
+    private final String text;
     private final List<MinePosition> minePositions;
+    private final LayoutSeed layoutSeed;
+    private final RevealDelta revealDelta;
+    private final GameSnapshot snapshot;
+    // The SnapshotCodec image of the host's game in a RESYNC
+    private final byte[] data;
+    // The sender's System.nanoTime() in a PING, echoed back by PONG, or
+    // the last sequence number received in a RESUME
+    private final long value;
+    // The message's sequence number within a ResumableSession, which the
+    // session assigns as it is sent; 0 outside a session
+    private final long number;
 
     public GameMessage(MessageType type) {
         this.type = type;
         this.x = -1;
         this.y = -1;
         this.isFlag = false;
-        this.playerName = null;
+        this.text = null;
         this.minePositions = null;
-        System.out.println("Created message of type: " + type);
+        this.layoutSeed = null;
+        this.revealDelta = null;
+        this.snapshot = null;
+        this.data = null;
+        this.value = 0;
+        this.number = 0;
     }
 
     public GameMessage(MessageType type, int x, int y) {
@@ -42,8 +76,14 @@ public class GameMessage implements Serializable {
         this.x = x;
         this.y = y;
         this.isFlag = false;
-        this.playerName = null;
+        this.text = null;
         this.minePositions = null;
+        this.layoutSeed = null;
+        this.revealDelta = null;
+        this.snapshot = null;
+        this.data = null;
+        this.value = 0;
+        this.number = 0;
     }
 
     public GameMessage(MessageType type, int x, int y, boolean isFlag) {
@@ -51,18 +91,29 @@ public class GameMessage implements Serializable {
         this.x = x;
         this.y = y;
         this.isFlag = isFlag;
-        this.playerName = null;
+        this.text = null;
         this.minePositions = null;
+        this.layoutSeed = null;
+        this.revealDelta = null;
+        this.snapshot = null;
+        this.data = null;
+        this.value = 0;
+        this.number = 0;
     }
 
-    public GameMessage(MessageType type, String playerName) {
+    public GameMessage(MessageType type, String text) {
         this.type = type;
         this.x = -1;
         this.y = -1;
         this.isFlag = false;
-        this.playerName = playerName;
+        this.text = text;
         this.minePositions = null;
-        System.out.println("Created message: type=" + type + ", playerName=" + playerName);
+        this.layoutSeed = null;
+        this.revealDelta = null;
+        this.snapshot = null;
+        this.data = null;
+        this.value = 0;
+        this.number = 0;
     }
 
     public GameMessage(MessageType type, List<MinePosition> minePositions) {
@@ -70,8 +121,130 @@ public class GameMessage implements Serializable {
         this.x = -1;
         this.y = -1;
         this.isFlag = false;
-        this.playerName = null;
+        this.text = null;
         this.minePositions = minePositions;
+        this.layoutSeed = null;
+        this.revealDelta = null;
+        this.snapshot = null;
+        this.data = null;
+        this.value = 0;
+        this.number = 0;
+    }
+
+    public GameMessage(MessageType type, LayoutSeed layoutSeed) {
+        this.type = type;
+        this.x = -1;
+        this.y = -1;
+        this.isFlag = false;
+        this.text = null;
+        this.minePositions = null;
+        this.layoutSeed = layoutSeed;
+        this.revealDelta = null;
+        this.snapshot = null;
+        this.data = null;
+        this.value = 0;
+        this.number = 0;
+    }
+
+    // A move resolved by the host: (x, y) is the cell played, -1 if none,
+    // and isFlag is set when the move was the host's own.
+    public GameMessage(MessageType type, int x, int y, boolean isFlag, RevealDelta revealDelta) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.isFlag = isFlag;
+        this.text = null;
+        this.minePositions = null;
+        this.layoutSeed = null;
+        this.revealDelta = revealDelta;
+        this.snapshot = null;
+        this.data = null;
+        this.value = 0;
+        this.number = 0;
+    }
+
+    public GameMessage(MessageType type, GameSnapshot snapshot) {
+        this.type = type;
+        this.x = -1;
+        this.y = -1;
+        this.isFlag = false;
+        this.text = null;
+        this.minePositions = null;
+        this.layoutSeed = null;
+        this.revealDelta = null;
+        this.snapshot = snapshot;
+        this.data = null;
+        this.value = 0;
+        this.number = 0;
+    }
+
+    // PING, or the PONG answering one
+    public GameMessage(MessageType type, long timestamp) {
+        this.type = type;
+        this.x = -1;
+        this.y = -1;
+        this.isFlag = false;
+        this.text = null;
+        this.minePositions = null;
+        this.layoutSeed = null;
+        this.revealDelta = null;
+        this.snapshot = null;
+        this.data = null;
+        this.value = timestamp;
+        this.number = 0;
+    }
+
+    // RESUME: the session token, empty to start a new session, and the
+    // sequence number of the last message received in it
+    public GameMessage(MessageType type, String token, long sequence) {
+        this.type = type;
+        this.x = -1;
+        this.y = -1;
+        this.isFlag = false;
+        this.text = token;
+        this.minePositions = null;
+        this.layoutSeed = null;
+        this.revealDelta = null;
+        this.snapshot = null;
+        this.data = null;
+        this.value = sequence;
+        this.number = 0;
+    }
+
+    // RESYNC: the whole game as the host has it, see SnapshotCodec
+    public GameMessage(MessageType type, byte[] data) {
+        this.type = type;
+        this.x = -1;
+        this.y = -1;
+        this.isFlag = false;
+        this.text = null;
+        this.minePositions = null;
+        this.layoutSeed = null;
+        this.revealDelta = null;
+        this.snapshot = null;
+        this.data = data;
+        this.value = 0;
+        this.number = 0;
+    }
+
+    // The same message numbered for a session, see ResumableSession
+    GameMessage withNumber(long number) {
+        return new GameMessage(this, number);
+    }
+
+    private GameMessage(GameMessage message, long number) {
+        this.type = message.type;
+        this.x = message.x;
+        this.y = message.y;
+        this.isFlag = message.isFlag;
+        this.text = message.text;
+        this.minePositions = message.minePositions;
+        this.layoutSeed = message.layoutSeed;
+        this.revealDelta = message.revealDelta;
+        this.snapshot = message.snapshot;
+        this.data = message.data;
+        this.value = message.value;
+        this.number = number;
     }
 
     public MessageType getType() {
@@ -91,21 +264,42 @@ public class GameMessage implements Serializable {
     }
 
     public String getPlayerName() {
-        return playerName;
+        return text;
+    }
+
+    public String getText() {
+        return text;
     }
 
     public List<MinePosition> getMinePositions() {
         return minePositions;
     }
 
-    public static GameMessage readFromStream(InputStream inputStream) throws IOException {
-        try (ObjectInputStream ois = new ObjectInputStream(inputStream)) {
-            GameMessage message = (GameMessage) ois.readObject();
-            System.out.println("Deserialized message of type: " + message.getType());
-            return message;
-        } catch (ClassNotFoundException e) {
-            System.err.println("Error deserializing GameMessage: " + e.getMessage());
-            throw new IOException("Failed to deserialize GameMessage", e);
-        }
+    public LayoutSeed getLayoutSeed() {
+        return layoutSeed;
+    }
+
+    public RevealDelta getRevealDelta() {
+        return revealDelta;
+    }
+
+    public GameSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public long getTimestamp() {
+        return value;
+    }
+
+    public long getSequence() {
+        return value;
+    }
+
+    public long getNumber() {
+        return number;
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,187 +1,312 @@
 package network;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import config.GameConfig;
+import log.EventLog;
 
+// The host's end of a two-player game. One client at a time plays in a
+// ResumableSession: if its socket drops, the session and everything sent
+// since is kept for the resume window, and a client that reconnects with
+// the session's token carries on where it left off. Only when the window
+// runs out does the game hear that the client has gone.
 public class GameServer {
     private ServerSocket serverSocket;
-    private Socket clientSocket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
     private final ExecutorService executor;
     private final AtomicBoolean isRunning;
     private final AtomicBoolean isReady;
     private MessageHandler messageHandler;
 
+    // Guarded by this
+    private ResumableSession session;
+    private ScheduledFuture<?> sessionExpiry;
+    // The connection the session talks through, null while it is suspended;
+    // written under the lock
+    private volatile SocketConnection client;
+    private volatile SocketConnection lastClient;
+
     public interface MessageHandler {
         void onMessageReceived(GameMessage message);
     }
 
     public GameServer() {
-        this.executor = Executors.newCachedThreadPool();
+        this.executor = ConnectionExecutors.newExecutor();
         this.isRunning = new AtomicBoolean(false);
         this.isReady = new AtomicBoolean(false);
-        System.out.println("GameServer created");
     }
 
     public void setMessageHandler(MessageHandler handler) {
         this.messageHandler = handler;
-        System.out.println("Message handler set for server");
     }
 
     public void start() {
         if (isRunning.get()) {
-            System.out.println("Server already running");
+            EventLog.debug("server.already_running");
             return;
         }
 
         executor.submit(() -> {
             try {
                 int port = GameConfig.getInstance().getPort();
-                System.out.println("Starting server on port " + port);
                 serverSocket = new ServerSocket(port);
                 isRunning.set(true);
                 isReady.set(true);
-                System.out.println("Server started successfully on port " + port);
+                EventLog.info("server.started", "port", port);
 
                 while (isRunning.get()) {
+                    Socket socket;
                     try {
-                        System.out.println("Waiting for client connection...");
-                        // Accept new client connection
-                        clientSocket = serverSocket.accept();
-                        System.out.println("New client connected: " + clientSocket.getInetAddress());
-
-                        // Create streams in the correct order - ONCE per client
-                        out = new ObjectOutputStream(clientSocket.getOutputStream());
-                        out.flush(); // Important: flush the header
-                        in = new ObjectInputStream(clientSocket.getInputStream());
-
-                        // Handle client communication in a separate thread
-                        handleClient();
+                        socket = serverSocket.accept();
                     } catch (IOException e) {
                         if (isRunning.get()) {
-                            System.err.println("Error accepting client connection: " + e.getMessage());
-                            cleanupClientConnection();
+                            EventLog.warn("client.accept_failed", e);
                         }
+                        continue;
                     }
+                    EventLog.info("client.connected", "address", socket.getInetAddress());
+                    // The handshake runs on the client's own thread, so a slow
+                    // one cannot hold up the next
+                    executor.submit(() -> handleClient(socket));
                 }
             } catch (IOException e) {
-                System.err.println("Failed to start server: " + e.getMessage());
+                EventLog.error("server.start_failed", "port", GameConfig.getInstance().getPort(), e);
                 stop();
             }
         });
     }
 
-    private void cleanupClientConnection() {
+    private void handleClient(Socket socket) {
+        SocketConnection connection;
+        try {
+            connection = SocketConnection.open(socket, "client " + socket.getInetAddress(), executor);
+        } catch (IOException e) {
+            EventLog.warn("client.handshake_failed", "address", socket.getInetAddress(), e);
+            return;
+        }
+
+        boolean clientLeft = false;
         try {
-            if (in != null) {
-                in.close();
-                in = null;
+            // Every client opens with RESUME, which says whether it is new
+            // or picking up a session
+            GameMessage first = connection.read();
+            if (first == null || first.getType() != GameMessage.MessageType.RESUME) {
+                EventLog.warn("client.rejected", "address", socket.getInetAddress(),
+                    "first", first == null ? null : first.getType());
+                return;
             }
-            if (out != null) {
-                out.close();
-                out = null;
+            ResumableSession current = attach(connection, first);
+            if (current == null) {
+                return;
             }
-            if (clientSocket != null) {
-                clientSocket.close();
-                clientSocket = null;
+
+            while (isRunning.get() && connection.isOpen() && client == connection) {
+                GameMessage message = connection.read();
+                if (message == null) {
+                    EventLog.info("client.closed");
+                    break;
+                }
+                if (EventLog.DEBUG) {
+                    EventLog.debug("message.received", "type", message.getType(),
+                        "x", message.getX(), "y", message.getY());
+                }
+                if (connection.handleProbe(message) || message.getType() == GameMessage.MessageType.RESUME) {
+                    continue;
+                }
+                if (!current.recordReceived(message)) {
+                    // Replayed after a resume, but it got through before
+                    continue;
+                }
+                if (message.getType() == GameMessage.MessageType.DISCONNECT) {
+                    clientLeft = true;
+                }
+                // IMPORTANT: DO NOT echo MOVE messages back to the sender
+                // This is what's causing the turn desynchronization
+                if (messageHandler != null) {
+                    messageHandler.onMessageReceived(message);
+                }
             }
+        } catch (SocketTimeoutException e) {
+            EventLog.warn("client.idle_timeout", "address", socket.getInetAddress(),
+                "idleMillis", GameConfig.getInstance().getIdleTimeoutMillis());
         } catch (IOException e) {
-            System.err.println("Error cleaning up client connection: " + e.getMessage());
+            if (isRunning.get() && connection.isOpen()) {
+                EventLog.warn("message.read_failed", e);
+            }
+        } finally {
+            EventLog.debug("client.reader_ended");
+            connection.close();
+            detach(connection, clientLeft);
         }
     }
 
-    private void handleClient() {
-        System.out.println("Starting client handler thread");
-        executor.submit(() -> {
-            try {
-                while (isRunning.get() && !clientSocket.isClosed()) {
-                    try {
-                        System.out.println("Waiting for message from client...");
-                        GameMessage message = (GameMessage) in.readObject();
-                        System.out.println("Received message of type: " + message.getType());
+    // Makes the connection the session's: a new session if it has no token,
+    // or the one it names if we still have everything it missed. A resume we
+    // cannot honour gets a RESUME without a token, and null is returned.
+    private synchronized ResumableSession attach(SocketConnection connection, GameMessage resume) {
+        String token = resume.getText();
+        boolean resumed = session != null && token != null && token.equals(session.getToken())
+            && session.canResumeFrom(resume.getSequence());
+        if (token != null && !resumed) {
+            EventLog.info("session.resume_rejected", "client", connection.getName());
+            connection.send(new GameMessage(GameMessage.MessageType.RESUME, null, 0));
+            return null;
+        }
+        if (!resumed && session != null) {
+            // A different client while the last one's game was still open:
+            // that game is over
+            endSession();
+        }
+        if (!resumed) {
+            session = new ResumableSession(ResumableSession.newToken());
+        }
+        if (sessionExpiry != null) {
+            sessionExpiry.cancel(false);
+            sessionExpiry = null;
+        }
+        SocketConnection previous = client;
+        client = connection;
+        lastClient = connection;
+        if (previous != null) {
+            // Half-open and not yet timed out; closing it ends its reader
+            executor.submit(previous::close);
+        }
 
-                        if (messageHandler != null) {
-                            System.out.println("Forwarding message to handler");
-                            messageHandler.onMessageReceived(message);
-                        }
+        // Our RESUME goes first so the client knows what to resend, then
+        // whatever it missed, all before anything new
+        connection.send(new GameMessage(GameMessage.MessageType.RESUME, session.getToken(),
+            session.getReceivedSequence()));
+        if (resumed) {
+            for (GameMessage message : session.sentAfter(resume.getSequence())) {
+                connection.send(message);
+            }
+            EventLog.info("session.resumed", "client", connection.getName(),
+                "replayed", session.getSentSequence() - resume.getSequence());
+        } else {
+            EventLog.info("session.started", "client", connection.getName());
+        }
+        connection.startPinging();
+        return session;
+    }
 
-                        // IMPORTANT: DO NOT echo MOVE messages back to the sender
-                        // This is what's causing the turn desynchronization
-                        if (message.getType() == GameMessage.MessageType.MOVE) {
-                            System.out.println("MOVE message received, processing locally but NOT echoing back");
-                            // Remove or comment out any code that sends this message back
-                            // DO NOT: sendMessage(message);
-                        } else {
-                            // Handle other messages normally
-                            // For non-MOVE messages, sending back might be appropriate
-                            // depending on your game logic
-                        }
+    // Called once the connection's reader has finished. A client that said
+    // goodbye ends the session; one that just vanished gets the resume
+    // window to come back.
+    private synchronized void detach(SocketConnection connection, boolean clientLeft) {
+        if (client != connection) {
+            // Superseded by a resumed connection, or never attached
+            return;
+        }
+        client = null;
+        if (!isRunning.get() || session == null) {
+            return;
+        }
+        int window = GameConfig.getInstance().getResumeWindowMillis();
+        if (clientLeft) {
+            session = null;
+        } else if (window > 0) {
+            EventLog.info("session.suspended", "windowMillis", window);
+            ResumableSession suspended = session;
+            sessionExpiry = ConnectionExecutors.timer().schedule(
+                () -> expireSession(suspended), window, TimeUnit.MILLISECONDS);
+        } else {
+            endSession();
+        }
+    }
 
-                    } catch (IOException e) {
-                        if (isRunning.get()) {
-                            System.err.println("Error reading message: " + e.getMessage());
-                        }
-                        break;
-                    } catch (ClassNotFoundException e) {
-                        System.err.println("Error deserializing message: " + e.getMessage());
-                    }
-                }
-            } finally {
-                System.out.println("Client handler thread ending");
-                cleanupClientConnection();
-            }
-        });
+    private synchronized void expireSession(ResumableSession suspended) {
+        if (session == suspended && client == null) {
+            EventLog.info("session.expired");
+            endSession();
+        }
     }
 
-    public synchronized void sendMessage(GameMessage message) {
+    // Tells the game the client has gone for good. Caller holds the lock.
+    private void endSession() {
+        session = null;
+        if (messageHandler != null) {
+            messageHandler.onMessageReceived(new GameMessage(GameMessage.MessageType.DISCONNECT));
+        }
+    }
+
+    // Queues the message for the client's writer and returns without
+    // touching the socket, so it is safe to call from the Swing thread.
+    // While a dropped client may still resume, messages are only kept for
+    // replay.
+    public void sendMessage(GameMessage message) {
         if (!isRunning.get()) {
-            System.err.println("Cannot send message: server not running");
+            EventLog.warn("message.not_sent", "type", message.getType(), "reason", "server not running");
             return;
         }
 
-        try {
-            if (out != null && clientSocket != null && !clientSocket.isClosed()) {
-                System.out.println("Sending message of type: " + message.getType());
-                // Add debug info for moves
-                if (message.getType() == GameMessage.MessageType.MOVE) {
-                    System.out.println("Sending MOVE at position (" + message.getX() + "," + message.getY() +"), isFlag=" + message.isFlag());
-                }
-
-                out.writeObject(message);
-                out.flush();
-                out.reset(); // Reset the stream cache to prevent memory leaks
-                System.out.println("Message sent successfully");
-            } else {
-                System.err.println("Cannot send message: no client connected or connection closed");
+        synchronized (this) {
+            if (session == null) {
+                EventLog.warn("message.not_sent", "type", message.getType(), "reason", "no client connected");
+                return;
+            }
+            if (ResumableSession.isSequenced(message)) {
+                message = session.recordSent(message);
+            }
+            if (client == null) {
+                EventLog.debug("message.buffered", "type", message.getType());
+                return;
+            }
+            if (EventLog.DEBUG) {
+                EventLog.debug("message.sent", "type", message.getType(), "x", message.getX(), "y", message.getY());
+            }
+            if (!client.send(message)) {
+                EventLog.warn("message.not_sent", "type", message.getType(), "queue", client.getOutboundQueue());
             }
-        } catch (IOException e) {
-            System.err.println("Error sending message: " + e.getMessage());
-            e.printStackTrace();
-            cleanupClientConnection();
         }
     }
 
+    // Queue depth and time-to-wire figures for the current or last client,
+    // or null if none has connected.
+    public OutboundQueue getOutboundQueue() {
+        SocketConnection connection = lastClient;
+        return connection != null ? connection.getOutboundQueue() : null;
+    }
+
+    // Round-trip times to the current or last client, or null if none has
+    // connected.
+    public LatencyStats getLatencyStats() {
+        SocketConnection connection = lastClient;
+        return connection != null ? connection.getLatencyStats() : null;
+    }
+
     public void stop() {
-        System.out.println("Stopping server");
+        EventLog.info("server.stopping");
         isRunning.set(false);
         isReady.set(false);
-        cleanupClientConnection();
+        SocketConnection connection;
+        synchronized (this) {
+            connection = client;
+            client = null;
+            session = null;
+            if (sessionExpiry != null) {
+                sessionExpiry.cancel(false);
+                sessionExpiry = null;
+            }
+        }
+        // Stop accepting first, so a client cannot reconnect while the
+        // last one's queue drains
         try {
             if (serverSocket != null) {
                 serverSocket.close();
                 serverSocket = null;
             }
         } catch (IOException e) {
-            System.err.println("Error closing server: " + e.getMessage());
+            EventLog.warn("server.close_failed", e);
+        }
+        // Outside the lock, as it waits for the queue to drain
+        if (connection != null) {
+            connection.close();
         }
         executor.shutdown();
     }
@@ -193,4 +318,4 @@ public class GameServer {
     public boolean isReady() {
         return isReady.get();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package network;
+
+import java.util.Arrays;
+
+// Round-trip times of one connection, measured with PING and PONG. Keeps
+// the last WINDOW samples, so the figures follow the link as it changes;
+// the percentiles are taken over that window when asked for. Jitter is
+// smoothed as in RTP (RFC 3550): every sample moves it a sixteenth of the
+// way towards the latest change in round-trip time.
+//
+// Samples are recorded by the connection's reader and read by anyone, so
+// all methods are synchronized.
+public class LatencyStats {
+    private static final int WINDOW = 128;
+
+    private final long[] samples = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private long count;
+    private long last = -1;
+    private double jitter;
+
+    public synchronized void record(long rttNanos) {
+        if (last >= 0) {
+            jitter += (Math.abs(rttNanos - last) - jitter) / 16;
+        }
+        last = rttNanos;
+        samples[(int) (count % WINDOW)] = rttNanos;
+        count++;
+    }
+
+    // Total samples recorded; the statistics cover the latest WINDOW of them.
+    public synchronized long getSampleCount() {
+        return count;
+    }
+
+    // -1 until the first PONG has come back
+    public synchronized long getLastNanos() {
+        return last;
+    }
+
+    public synchronized long getMinNanos() {
+        return percentile(0);
+    }
+
+    public synchronized long getMedianNanos() {
+        return percentile(50);
+    }
+
+    public synchronized long getP99Nanos() {
+        return percentile(99);
+    }
+
+    public synchronized long getJitterNanos() {
+        return (long) jitter;
+    }
+
+    private long percentile(int percent) {
+        int n = (int) Math.min(count, WINDOW);
+        if (n == 0) {
+            return -1;
+        }
+        System.arraycopy(samples, 0, sorted, 0, n);
+        Arrays.sort(sorted, 0, n);
+        return sorted[(int) Math.min(n - 1, (long) percent * n / 100)];
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (count == 0) {
+            return "no samples";
+        }
+        return String.format("rtt min=%.1f p50=%.1f p99=%.1f jitter=%.1f ms (%d samples)",
+            getMinNanos() / 1e6, getMedianNanos() / 1e6, getP99Nanos() / 1e6, getJitterNanos() / 1e6,
+            Math.min(count, WINDOW));
+    }
+}
@@ -0,0 +1,840 @@
+package network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import model.Board.LayoutSeed;
+import model.Board.MinePosition;
+import model.GameSnapshot;
+import model.RevealDelta;
+
+// Binary wire format for GameMessage.
+//
+// Every frame is a varint body length followed by the body: one type byte
+// (the MessageType ordinal, so new types must only ever be appended) and a
+// type-specific payload. Coordinates are zigzag varints, names are
+// length-prefixed UTF-8, and mine layouts are sent either as a bitmap or as
+// delta-coded cell indices, whichever is smaller. Usually a layout is not
+// sent at all: BOARD_SEED carries the few numbers it is generated from.
+// REVEAL_DELTA lists uncovered cells as runs of consecutive indices or as a
+// bitmap over their span, again whichever is smaller, followed by their
+// values packed two to a byte.
+//
+// PING carries the sender's System.nanoTime() as a fixed 8 bytes and PONG
+// echoes it, so only the clock that took it ever reads it. RESUME is a
+// session token and a fixed 8-byte sequence number. A message sent within a
+// ResumableSession has the top bit of its type byte set and its sequence
+// number, a varint, straight after it.
+//
+// A connection starts with a handshake in which each side sends MAGIC and
+// its PROTOCOL_VERSION; a mismatch closes the connection.
+//
+// An instance holds the reusable buffers for one connection, so encoding
+// and decoding a MOVE allocates nothing beyond the decoded message itself.
+// Instances are not thread-safe; use one for reading and one for writing.
+public class MessageCodec {
+    // Version 2 added BOARD_SEED, which relies on both peers placing mines
+    // with the same algorithm, so a change to Board.placeMines needs a bump.
+    // Version 3 added PING and PONG, which peers send unprompted.
+    // Version 4 added RESUME, which every GameClient connection starts with.
+    // Version 5 added RESYNC, which replaces MINE_POSITIONS as the answer to
+    // LAYOUT_REQUEST.
+    // Version 6 covers REVEAL_DELTA, which a fog-of-war host sends
+    // unprompted. It shipped under version 2 without a bump of its own.
+    // Version 7 covers the room messages CREATE_ROOM, JOIN_ROOM, ROOM_JOINED
+    // and ROOM_ERROR, which also shipped unbumped.
+    // Version 8 added WATCH_ROOM and SNAPSHOT and sends ROOM_JOINED's seat
+    // as a zigzag varint, so that a spectator's -1 fits.
+    // Version 9 numbers the messages of a resumable session on the wire.
+    public static final int PROTOCOL_VERSION = 9;
+    private static final byte[] MAGIC = {'M', 'S', 'W', 'P'};
+    public static final int HANDSHAKE_LENGTH = MAGIC.length + 1;
+    private static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+    private static final long END_OF_STREAM = -1;
+
+    private static final int LAYOUT_INDICES = 0;
+    private static final int LAYOUT_BITMAP = 1;
+    private static final int CELLS_RUNS = 0;
+    private static final int CELLS_BITMAP = 1;
+    // Set in the type byte of a message that carries a sequence number
+    private static final int NUMBERED = 0x80;
+
+    private static final GameMessage.MessageType[] TYPES = GameMessage.MessageType.values();
+
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(256);
+    private byte[] readBytes = new byte[256];
+    private ByteBuffer readBuffer = ByteBuffer.wrap(readBytes);
+
+    public static void writeHandshake(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(PROTOCOL_VERSION);
+        out.flush();
+    }
+
+    public static void writeHandshake(ByteBuffer out) {
+        out.put(MAGIC);
+        out.put((byte) PROTOCOL_VERSION);
+    }
+
+    // Non-blocking variant: the buffer must hold HANDSHAKE_LENGTH bytes.
+    public static int readHandshake(ByteBuffer in) throws IOException {
+        for (byte expected : MAGIC) {
+            if (in.get() != expected) {
+                throw new IOException("Peer is not speaking the game protocol");
+            }
+        }
+        int version = in.get() & 0xFF;
+        if (version != PROTOCOL_VERSION) {
+            throw new IOException("Unsupported protocol version " + version
+                + " (expected " + PROTOCOL_VERSION + ")");
+        }
+        return version;
+    }
+
+    // Reads the peer's handshake and returns its protocol version.
+    public static int readHandshake(InputStream in) throws IOException {
+        for (byte expected : MAGIC) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Connection closed during handshake");
+            }
+            if ((byte) b != expected) {
+                throw new IOException("Peer is not speaking the game protocol");
+            }
+        }
+        int version = in.read();
+        if (version < 0) {
+            throw new EOFException("Connection closed during handshake");
+        }
+        if (version != PROTOCOL_VERSION) {
+            throw new IOException("Unsupported protocol version " + version
+                + " (expected " + PROTOCOL_VERSION + ")");
+        }
+        return version;
+    }
+
+    // Encodes one frame into the reusable buffer and writes it. The caller
+    // decides when to flush.
+    public void writeMessage(GameMessage message, OutputStream out) throws IOException {
+        int frameLength = frameLength(message);
+        if (writeBuffer.capacity() < frameLength) {
+            writeBuffer = ByteBuffer.allocate(Math.max(frameLength, writeBuffer.capacity() * 2));
+        }
+        writeBuffer.clear();
+        encode(message, writeBuffer);
+        out.write(writeBuffer.array(), 0, writeBuffer.position());
+    }
+
+    // Blocks until a whole frame has been read. Returns null at a clean end of stream.
+    public GameMessage readMessage(InputStream in) throws IOException {
+        long prefix = readLengthPrefix(in);
+        if (prefix == END_OF_STREAM) {
+            return null;
+        }
+        // Five bytes can make a length past Integer.MAX_VALUE, which the
+        // prefix keeps as it is instead of letting it turn negative
+        if (prefix == 0 || prefix > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + prefix);
+        }
+        int length = (int) prefix;
+        if (readBytes.length < length) {
+            readBytes = new byte[Math.max(length, readBytes.length * 2)];
+            readBuffer = ByteBuffer.wrap(readBytes);
+        }
+        int read = 0;
+        while (read < length) {
+            int n = in.read(readBytes, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Connection closed mid-frame");
+            }
+            read += n;
+        }
+        readBuffer.clear().limit(length);
+        return decodeBody(readBuffer);
+    }
+
+    // For non-blocking readers: returns the length (prefix included) of the
+    // frame starting at the buffer's position if all of it has arrived, or
+    // -1 if more bytes are needed. The position is left unchanged.
+    public static int completeFrameLength(ByteBuffer in) throws IOException {
+        int position = in.position();
+        int length = 0;
+        int prefix = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (shift >= 35) {
+                throw new IOException("Varint too long");
+            }
+            if (position + prefix >= in.limit()) {
+                return -1;
+            }
+            int b = in.get(position + prefix);
+            prefix++;
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        // Five bytes can make a negative length
+        if (length <= 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + Integer.toUnsignedString(length));
+        }
+        return in.remaining() >= prefix + length ? prefix + length : -1;
+    }
+
+    // Decodes the complete frame at the buffer's position (see
+    // completeFrameLength) and moves the position past it.
+    public static GameMessage decodeFrame(ByteBuffer in) throws IOException {
+        int length = readVarint(in);
+        int end = in.position() + length;
+        int limit = in.limit();
+        in.limit(end);
+        try {
+            return decodeBody(in);
+        } finally {
+            in.limit(limit);
+            in.position(end);
+        }
+    }
+
+    // Encodes a message into a new buffer holding exactly one frame, ready to
+    // be written to any number of connections.
+    public static ByteBuffer encodeFrame(GameMessage message) {
+        ByteBuffer frame = ByteBuffer.allocate(frameLength(message));
+        encode(message, frame);
+        frame.flip();
+        return frame;
+    }
+
+    // Number of bytes encode() will write for this message, prefix included.
+    public static int frameLength(GameMessage message) {
+        int bodyLength = bodyLength(message);
+        return varintLength(bodyLength) + bodyLength;
+    }
+
+    // Writes a complete frame at the buffer's position, which must have
+    // frameLength(message) bytes remaining.
+    public static void encode(GameMessage message, ByteBuffer out) {
+        writeVarint(out, bodyLength(message));
+        long number = message.getNumber();
+        if (number != 0) {
+            out.put((byte) (message.getType().ordinal() | NUMBERED));
+            writeVarlong(out, number);
+        } else {
+            out.put((byte) message.getType().ordinal());
+        }
+        switch (message.getType()) {
+            case MOVE:
+                writeVarint(out, zigzag(message.getX()));
+                writeVarint(out, zigzag(message.getY()));
+                out.put((byte) (message.isFlag() ? 1 : 0));
+                break;
+            case GAME_OVER:
+                out.put((byte) (message.isFlag() ? 1 : 0));
+                break;
+            case PLAYER_JOINED:
+            case CREATE_ROOM:
+            case JOIN_ROOM:
+            case ROOM_ERROR:
+            case WATCH_ROOM:
+                writeString(out, message.getText());
+                break;
+            case ROOM_JOINED:
+                writeVarint(out, zigzag(message.getX()));
+                break;
+            case SNAPSHOT:
+                writeSnapshot(out, message.getSnapshot());
+                break;
+            case MINE_POSITIONS:
+                writeLayout(out, message.getMinePositions());
+                break;
+            case BOARD_SEED:
+                writeLayoutSeed(out, message.getLayoutSeed());
+                break;
+            case REVEAL_DELTA:
+                writeVarint(out, zigzag(message.getX()));
+                writeVarint(out, zigzag(message.getY()));
+                out.put((byte) (message.isFlag() ? 1 : 0));
+                writeRevealDelta(out, message.getRevealDelta());
+                break;
+            case PING:
+            case PONG:
+                out.putLong(message.getTimestamp());
+                break;
+            case RESUME:
+                writeString(out, message.getText());
+                out.putLong(message.getSequence());
+                break;
+            case RESYNC:
+                writeVarint(out, message.getData().length);
+                out.put(message.getData());
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Decodes a frame body (type byte and payload) spanning position..limit.
+    public static GameMessage decodeBody(ByteBuffer body) throws IOException {
+        try {
+            int code = body.get() & 0xFF;
+            long number = 0;
+            if ((code & NUMBERED) != 0) {
+                code &= ~NUMBERED;
+                number = readVarlong(body);
+                if (number <= 0) {
+                    throw new IOException("Invalid sequence number " + Long.toUnsignedString(number));
+                }
+            }
+            if (code >= TYPES.length) {
+                throw new IOException("Unknown message type " + code);
+            }
+            GameMessage message = decodePayload(TYPES[code], body);
+            return number != 0 ? message.withNumber(number) : message;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed " + body.limit() + "-byte frame", e);
+        }
+    }
+
+    private static GameMessage decodePayload(GameMessage.MessageType type, ByteBuffer body) throws IOException {
+        switch (type) {
+            case MOVE: {
+                int x = unzigzag(readVarint(body));
+                int y = unzigzag(readVarint(body));
+                return new GameMessage(type, x, y, body.get() != 0);
+            }
+            case GAME_OVER:
+                return new GameMessage(type, 0, 0, body.get() != 0);
+            case PLAYER_JOINED:
+            case CREATE_ROOM:
+            case JOIN_ROOM:
+            case ROOM_ERROR:
+            case WATCH_ROOM:
+                return new GameMessage(type, readString(body));
+            case ROOM_JOINED:
+                return new GameMessage(type, unzigzag(readVarint(body)), 0);
+            case SNAPSHOT:
+                return new GameMessage(type, readSnapshot(body));
+            case MINE_POSITIONS:
+                return new GameMessage(type, readLayout(body));
+            case BOARD_SEED:
+                return new GameMessage(type, readLayoutSeed(body));
+            case REVEAL_DELTA: {
+                int x = unzigzag(readVarint(body));
+                int y = unzigzag(readVarint(body));
+                boolean isFlag = body.get() != 0;
+                return new GameMessage(type, x, y, isFlag, readRevealDelta(body));
+            }
+            case PING:
+            case PONG:
+                return new GameMessage(type, body.getLong());
+            case RESUME: {
+                String token = readString(body);
+                return new GameMessage(type, token, body.getLong());
+            }
+            case RESYNC: {
+                int length = readLength(body, body.remaining(), "resync length");
+                byte[] data = new byte[length];
+                body.get(data);
+                return new GameMessage(type, data);
+            }
+            default:
+                return new GameMessage(type);
+        }
+    }
+
+    private static int bodyLength(GameMessage message) {
+        long number = message.getNumber();
+        return (number != 0 ? varlongLength(number) : 0) + payloadLength(message);
+    }
+
+    // The type byte and what follows the sequence number, if any
+    private static int payloadLength(GameMessage message) {
+        switch (message.getType()) {
+            case MOVE:
+                return 1 + varintLength(zigzag(message.getX())) + varintLength(zigzag(message.getY())) + 1;
+            case GAME_OVER:
+                return 2;
+            case PLAYER_JOINED:
+            case CREATE_ROOM:
+            case JOIN_ROOM:
+            case ROOM_ERROR:
+            case WATCH_ROOM:
+                return 1 + stringLength(message.getText());
+            case ROOM_JOINED:
+                return 1 + varintLength(zigzag(message.getX()));
+            case SNAPSHOT:
+                return 1 + snapshotLength(message.getSnapshot());
+            case MINE_POSITIONS:
+                return 1 + layoutLength(message.getMinePositions());
+            case BOARD_SEED:
+                return 1 + layoutSeedLength(message.getLayoutSeed());
+            case REVEAL_DELTA:
+                return 1 + varintLength(zigzag(message.getX())) + varintLength(zigzag(message.getY())) + 1
+                    + revealDeltaLength(message.getRevealDelta());
+            case PING:
+            case PONG:
+                return 1 + Long.BYTES;
+            case RESUME:
+                return 1 + stringLength(message.getText()) + Long.BYTES;
+            case RESYNC:
+                return 1 + varintLength(message.getData().length) + message.getData().length;
+            default:
+                return 1;
+        }
+    }
+
+    // Mine layouts. Cells are numbered x * dimension + y, where dimension is
+    // one more than the largest coordinate, so the receiver needs no board size.
+
+    private static int layoutDimension(List<MinePosition> positions) {
+        int dimension = 0;
+        for (MinePosition pos : positions) {
+            dimension = Math.max(dimension, Math.max(pos.x, pos.y) + 1);
+        }
+        return dimension;
+    }
+
+    private static int[] sortedIndices(List<MinePosition> positions, int dimension) {
+        int[] indices = new int[positions.size()];
+        for (int i = 0; i < indices.length; i++) {
+            MinePosition pos = positions.get(i);
+            indices[i] = pos.x * dimension + pos.y;
+        }
+        Arrays.sort(indices);
+        return indices;
+    }
+
+    private static int indexEncodingLength(int[] indices) {
+        int length = 0;
+        int previous = -1;
+        for (int index : indices) {
+            length += varintLength(index - previous - 1);
+            previous = index;
+        }
+        return length;
+    }
+
+    private static int bitmapLength(int dimension) {
+        return (int) (((long) dimension * dimension + 7) / 8);
+    }
+
+    private static int layoutLength(List<MinePosition> positions) {
+        if (positions == null) {
+            positions = new ArrayList<>();
+        }
+        int dimension = layoutDimension(positions);
+        int[] indices = sortedIndices(positions, dimension);
+        int header = varintLength(dimension) + varintLength(indices.length) + 1;
+        return header + Math.min(indexEncodingLength(indices), bitmapLength(dimension));
+    }
+
+    private static void writeLayout(ByteBuffer out, List<MinePosition> positions) {
+        if (positions == null) {
+            positions = new ArrayList<>();
+        }
+        int dimension = layoutDimension(positions);
+        int[] indices = sortedIndices(positions, dimension);
+        writeVarint(out, dimension);
+        writeVarint(out, indices.length);
+        if (indexEncodingLength(indices) <= bitmapLength(dimension)) {
+            out.put((byte) LAYOUT_INDICES);
+            int previous = -1;
+            for (int index : indices) {
+                writeVarint(out, index - previous - 1);
+                previous = index;
+            }
+        } else {
+            out.put((byte) LAYOUT_BITMAP);
+            byte[] bitmap = new byte[bitmapLength(dimension)];
+            for (int index : indices) {
+                bitmap[index >>> 3] |= 1 << (index & 7);
+            }
+            out.put(bitmap);
+        }
+    }
+
+    private static List<MinePosition> readLayout(ByteBuffer in) throws IOException {
+        int dimension = readLength(in, Integer.MAX_VALUE, "layout size");
+        long cellCount = (long) dimension * dimension;
+        // Every mine takes at least a byte as an index, a bit in a bitmap
+        int count = readLength(in, Math.min(cellCount, 8L * in.remaining()), "mine count");
+        int mode = in.get();
+        List<MinePosition> positions = new ArrayList<>(count);
+        if (mode == LAYOUT_INDICES) {
+            long index = -1;
+            for (int i = 0; i < count; i++) {
+                index += readLength(in, cellCount, "mine gap") + 1L;
+                if (index >= cellCount) {
+                    throw new IOException("Layout mine " + index + " is off a " + dimension + "x" + dimension + " board");
+                }
+                positions.add(new MinePosition((int) (index / dimension), (int) (index % dimension)));
+            }
+        } else if (mode == LAYOUT_BITMAP) {
+            int bytes = bitmapLength(dimension);
+            if (bytes > in.remaining()) {
+                throw new IOException("Layout bitmap of " + bytes + " bytes, " + in.remaining() + " bytes left");
+            }
+            for (int i = 0; i < bytes; i++) {
+                int bits = in.get() & 0xFF;
+                while (bits != 0) {
+                    int index = i * 8 + Integer.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    positions.add(new MinePosition(index / dimension, index % dimension));
+                }
+            }
+        } else {
+            throw new IOException("Unknown layout encoding " + mode);
+        }
+        return positions;
+    }
+
+    // Seeded layouts: the seed and hash as fixed 8-byte values, the rest as varints.
+
+    private static int layoutSeedLength(LayoutSeed layout) {
+        return 8 + varintLength(layout.size) + varintLength(layout.numberOfMines)
+            + varintLength(layout.safeZoneRadius) + varintLength(zigzag(layout.firstClickX))
+            + varintLength(zigzag(layout.firstClickY)) + 8;
+    }
+
+    private static void writeLayoutSeed(ByteBuffer out, LayoutSeed layout) {
+        out.putLong(layout.seed);
+        writeVarint(out, layout.size);
+        writeVarint(out, layout.numberOfMines);
+        writeVarint(out, layout.safeZoneRadius);
+        writeVarint(out, zigzag(layout.firstClickX));
+        writeVarint(out, zigzag(layout.firstClickY));
+        out.putLong(layout.layoutHash);
+    }
+
+    private static LayoutSeed readLayoutSeed(ByteBuffer in) throws IOException {
+        long seed = in.getLong();
+        int size = readLength(in, Integer.MAX_VALUE, "board size");
+        int numberOfMines = readLength(in, Integer.MAX_VALUE, "mine count");
+        // A wider zone covers the whole board anyway
+        int safeZoneRadius = readLength(in, size, "safe zone radius");
+        int firstClickX = unzigzag(readVarint(in));
+        int firstClickY = unzigzag(readVarint(in));
+        long layoutHash = in.getLong();
+        return new LayoutSeed(seed, size, numberOfMines, safeZoneRadius, firstClickX, firstClickY, layoutHash);
+    }
+
+    // Reveal deltas. Flood fills uncover whole row segments, so the cells
+    // usually collapse into a handful of runs; scattered cells over a small
+    // span are cheaper as a bitmap.
+
+    private static int runsLength(RevealDelta delta) {
+        int runs = 0;
+        int length = 0;
+        int count = delta.getCellCount();
+        int previousEnd = -1;
+        for (int i = 0; i < count; ) {
+            int start = delta.getCell(i);
+            int j = i + 1;
+            while (j < count && delta.getCell(j) == delta.getCell(j - 1) + 1) {
+                j++;
+            }
+            length += varintLength(start - previousEnd - 1) + varintLength(j - i - 1);
+            previousEnd = delta.getCell(j - 1);
+            runs++;
+            i = j;
+        }
+        return varintLength(runs) + length;
+    }
+
+    private static int spanBitmapLength(RevealDelta delta) {
+        int count = delta.getCellCount();
+        if (count == 0) {
+            return 1;
+        }
+        int first = delta.getCell(0);
+        int span = delta.getCell(count - 1) - first + 1;
+        return varintLength(first) + (span + 7) / 8;
+    }
+
+    private static int revealDeltaLength(RevealDelta delta) {
+        int header = varintLength(delta.getSize()) + varintLength(delta.getCellCount()) + 1;
+        int values = (delta.getCellCount() + 1) / 2;
+        return header + Math.min(runsLength(delta), spanBitmapLength(delta)) + values;
+    }
+
+    private static void writeRevealDelta(ByteBuffer out, RevealDelta delta) {
+        int count = delta.getCellCount();
+        writeVarint(out, delta.getSize());
+        writeVarint(out, count);
+        if (runsLength(delta) <= spanBitmapLength(delta)) {
+            out.put((byte) CELLS_RUNS);
+            int runs = 0;
+            for (int i = 1; i <= count; i++) {
+                if (i == count || delta.getCell(i) != delta.getCell(i - 1) + 1) {
+                    runs++;
+                }
+            }
+            writeVarint(out, runs);
+            int previousEnd = -1;
+            for (int i = 0; i < count; ) {
+                int start = delta.getCell(i);
+                int j = i + 1;
+                while (j < count && delta.getCell(j) == delta.getCell(j - 1) + 1) {
+                    j++;
+                }
+                writeVarint(out, start - previousEnd - 1);
+                writeVarint(out, j - i - 1);
+                previousEnd = delta.getCell(j - 1);
+                i = j;
+            }
+        } else {
+            out.put((byte) CELLS_BITMAP);
+            int first = count == 0 ? 0 : delta.getCell(0);
+            writeVarint(out, first);
+            byte[] bitmap = new byte[count == 0 ? 0 : (delta.getCell(count - 1) - first + 8) / 8];
+            for (int i = 0; i < count; i++) {
+                int bit = delta.getCell(i) - first;
+                bitmap[bit >>> 3] |= 1 << (bit & 7);
+            }
+            out.put(bitmap);
+        }
+        for (int i = 0; i < count; i += 2) {
+            int high = i + 1 < count ? delta.getValue(i + 1) : 0;
+            out.put((byte) (delta.getValue(i) | high << 4));
+        }
+    }
+
+    private static RevealDelta readRevealDelta(ByteBuffer in) throws IOException {
+        int size = readLength(in, Integer.MAX_VALUE, "board size");
+        long cellCount = (long) size * size;
+        // Every cell's value takes half a byte at the end of the frame
+        int count = readLength(in, Math.min(cellCount, 2L * in.remaining()), "cell count");
+        int mode = in.get();
+        int[] cells = new int[count];
+        int n = 0;
+        if (mode == CELLS_RUNS) {
+            int runs = readLength(in, count, "run count");
+            long previousEnd = -1;
+            for (int r = 0; r < runs; r++) {
+                long start = previousEnd + readLength(in, cellCount, "run gap") + 1;
+                int length = readLength(in, count, "run length") + 1;
+                if (n + length > count || start + length > cellCount) {
+                    throw new IOException("Delta run overflows the board");
+                }
+                for (int k = 0; k < length; k++) {
+                    cells[n++] = (int) start + k;
+                }
+                previousEnd = start + length - 1;
+            }
+        } else if (mode == CELLS_BITMAP) {
+            long first = readLength(in, cellCount, "bitmap start");
+            for (int b = 0; n < count; b++) {
+                int bits = in.get() & 0xFF;
+                while (bits != 0) {
+                    long index = first + b * 8L + Integer.numberOfTrailingZeros(bits);
+                    if (n == count || index >= cellCount) {
+                        throw new IOException("Delta bitmap overflows the board");
+                    }
+                    cells[n++] = (int) index;
+                    bits &= bits - 1;
+                }
+            }
+        } else {
+            throw new IOException("Unknown cell encoding " + mode);
+        }
+        if (n != count) {
+            throw new IOException("Delta holds " + n + " cells, expected " + count);
+        }
+        byte[] values = new byte[count];
+        for (int i = 0; i < count; i += 2) {
+            int packed = in.get() & 0xFF;
+            values[i] = revealValue(packed & 0x0F);
+            if (i + 1 < count) {
+                values[i + 1] = revealValue(packed >>> 4);
+            }
+        }
+        return new RevealDelta(size, cells, values);
+    }
+
+    // A count of 0 to 8 or RevealDelta.MINE; the rest of a nibble would end
+    // up in the board as an adjacent mine count no cell can have.
+    private static byte revealValue(int value) throws IOException {
+        if (value > 8 && value != RevealDelta.MINE) {
+            throw new IOException("Invalid revealed cell value " + value);
+        }
+        return (byte) value;
+    }
+
+    // Snapshots: the game's header fields followed by every revealed cell in
+    // the reveal delta encoding.
+
+    private static int snapshotLength(GameSnapshot snapshot) {
+        int length = varintLength(snapshot.getSize()) + varintLength(snapshot.getNumberOfMines())
+            + varintLength(snapshot.getPlayerCount());
+        for (int i = 0; i < snapshot.getPlayerCount(); i++) {
+            length += stringLength(snapshot.getPlayerName(i));
+        }
+        return length + varintLength(zigzag(snapshot.getCurrentPlayer())) + 1
+            + varintLength(zigzag(snapshot.getWinner())) + revealDeltaLength(snapshot.getRevealed());
+    }
+
+    private static void writeSnapshot(ByteBuffer out, GameSnapshot snapshot) {
+        writeVarint(out, snapshot.getSize());
+        writeVarint(out, snapshot.getNumberOfMines());
+        writeVarint(out, snapshot.getPlayerCount());
+        for (int i = 0; i < snapshot.getPlayerCount(); i++) {
+            writeString(out, snapshot.getPlayerName(i));
+        }
+        writeVarint(out, zigzag(snapshot.getCurrentPlayer()));
+        out.put((byte) (snapshot.isGameOver() ? 1 : 0));
+        writeVarint(out, zigzag(snapshot.getWinner()));
+        writeRevealDelta(out, snapshot.getRevealed());
+    }
+
+    private static GameSnapshot readSnapshot(ByteBuffer in) throws IOException {
+        int size = readLength(in, Integer.MAX_VALUE, "board size");
+        int numberOfMines = readLength(in, (long) size * size, "mine count");
+        // Every player's name takes at least a byte
+        int playerCount = readLength(in, in.remaining(), "player count");
+        String[] names = new String[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            names[i] = readString(in);
+        }
+        int currentPlayer = unzigzag(readVarint(in));
+        boolean gameOver = in.get() != 0;
+        int winner = unzigzag(readVarint(in));
+        return new GameSnapshot(size, numberOfMines, names, currentPlayer, gameOver, winner, readRevealDelta(in));
+    }
+
+    // Primitive encodings
+
+    private static int stringLength(String value) {
+        if (value == null) {
+            return 1;
+        }
+        int bytes = value.getBytes(StandardCharsets.UTF_8).length;
+        return varintLength(bytes + 1) + bytes;
+    }
+
+    // Length is sent as bytes + 1 so that 0 can stand for null.
+    private static void writeString(ByteBuffer out, String value) {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.put(bytes);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = readLength(in, in.remaining() + 1L, "string length");
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Reads a length or count sent by the peer and checks it against max,
+    // usually what is left of the frame, before anything is allocated for
+    // it. A varint of five bytes can come out negative, which is rejected too.
+    private static int readLength(ByteBuffer in, long max, String what) throws IOException {
+        int value = readVarint(in);
+        if (value < 0 || value > max) {
+            throw new IOException("Invalid " + what + " " + Integer.toUnsignedString(value)
+                + " with " + in.remaining() + " bytes left");
+        }
+        return value;
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int readVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    static int varlongLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    static void writeVarlong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long readVarlong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varlong too long");
+    }
+
+    // A frame's length prefix as an unsigned 32-bit value, or END_OF_STREAM
+    // if the stream ends cleanly before it.
+    private static long readLengthPrefix(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return END_OF_STREAM;
+                }
+                throw new EOFException("Connection closed mid-frame");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value & 0xFFFFFFFFL;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+}
@@ -0,0 +1,523 @@
+package network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import config.GameConfig;
+import log.EventLog;
+
+// Non-blocking alternative to GameServer for many simultaneous connections.
+//
+// A small fixed set of event loops, each with its own Selector, serves all
+// connections; the first loop also accepts and hands new channels out
+// round-robin. Every connection has its own read buffer, which collects
+// partial frames until MessageCodec can decode them, and its own write
+// buffer, which any thread may append to and only the owning loop drains.
+//
+// Incoming messages go to the same GameServer.MessageHandler the UI already
+// uses, and, for callers that need to know the sender, to a ConnectionHandler.
+// PING and PONG are dealt with here and reach neither.
+//
+// Each loop also sweeps its connections every heartbeat interval: one that
+// has sent nothing for the idle timeout is closed, and one that has been
+// quiet for a heartbeat is pinged, so a live client always has something
+// to answer and a dead one is found at most a heartbeat after the timeout.
+public class NioGameServer {
+    public interface ConnectionHandler {
+        void onConnected(Connection connection);
+        void onMessage(Connection connection, GameMessage message);
+        void onDisconnected(Connection connection);
+    }
+
+    private static final int READ_BUFFER_SIZE = 4 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_PENDING_WRITE_BYTES = 4 * 1024 * 1024;
+    // The largest frame a peer may send us, which is what its read buffer
+    // can grow to. A resync of a 1000x1000 board is well under it.
+    private static final int MAX_READ_BUFFER_BYTES = 1024 * 1024;
+
+    private final int port;
+    private final long idleTimeoutNanos;
+    private final long heartbeatNanos;
+    private final EventLoop[] loops;
+    private final Map<Long, Connection> connections = new ConcurrentHashMap<>();
+    private final AtomicLong nextConnectionId = new AtomicLong(1);
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    private final AtomicBoolean isReady = new AtomicBoolean(false);
+    private ServerSocketChannel serverChannel;
+    private int nextLoop;
+    private volatile GameServer.MessageHandler messageHandler;
+    private volatile ConnectionHandler connectionHandler;
+
+    public NioGameServer() {
+        this(GameConfig.getInstance().getPort(), Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public NioGameServer(int port, int eventLoops) {
+        this.port = port;
+        this.loops = new EventLoop[Math.max(1, eventLoops)];
+        GameConfig config = GameConfig.getInstance();
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(config.getHeartbeatIntervalMillis());
+    }
+
+    public void setMessageHandler(GameServer.MessageHandler handler) {
+        this.messageHandler = handler;
+    }
+
+    public void setConnectionHandler(ConnectionHandler handler) {
+        this.connectionHandler = handler;
+    }
+
+    public void start() throws IOException {
+        if (!isRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port), 1024);
+            serverChannel.configureBlocking(false);
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop(i);
+            }
+            serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+            for (EventLoop loop : loops) {
+                loop.thread.start();
+            }
+            isReady.set(true);
+            EventLog.info("nio.started", "port", getPort(), "loops", loops.length);
+        } catch (IOException e) {
+            stop();
+            throw e;
+        }
+    }
+
+    public void stop() {
+        if (!isRunning.getAndSet(false)) {
+            return;
+        }
+        isReady.set(false);
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            EventLog.warn("nio.close_failed", e);
+        }
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return isRunning.get();
+    }
+
+    public boolean isReady() {
+        return isReady.get();
+    }
+
+    // The bound port, which differs from the configured one when that was 0.
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException | RuntimeException e) {
+            return port;
+        }
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public Connection getConnection(long id) {
+        return connections.get(id);
+    }
+
+    // Sends to every connected peer; the frame is encoded once for all of them.
+    public void sendMessage(GameMessage message) {
+        ByteBuffer frame = MessageCodec.encodeFrame(message);
+        for (Connection connection : connections.values()) {
+            if (connection.handshakeDone) {
+                send(connection, frame);
+            }
+        }
+    }
+
+    public void send(Connection connection, GameMessage message) {
+        connection.enqueue(message);
+    }
+
+    // Sends an already encoded frame (see MessageCodec.encodeFrame). The
+    // buffer itself is not modified, so one frame can go to many connections.
+    public void send(Connection connection, ByteBuffer frame) {
+        connection.enqueue(frame);
+    }
+
+    public void close(Connection connection) {
+        connection.loop.execute(() -> connection.loop.close(connection));
+    }
+
+    public final class Connection {
+        private final long id;
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        // Guarded by this; filled by any thread, drained by the event loop
+        private ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        // Set by the event loop, read by any thread that sends
+        private volatile boolean handshakeDone;
+        // When anything last arrived; only touched by the event loop
+        private long lastReadNanos = System.nanoTime();
+        private volatile boolean closed;
+        private volatile Object attachment;
+
+        private Connection(long id, SocketChannel channel, EventLoop loop) {
+            this.id = id;
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public SocketAddress getRemoteAddress() {
+            try {
+                return channel.getRemoteAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        public synchronized int getPendingWriteBytes() {
+            return writeBuffer.position();
+        }
+
+        // Free slot for whoever owns the connection, e.g. a game room
+        public Object getAttachment() {
+            return attachment;
+        }
+
+        public void setAttachment(Object attachment) {
+            this.attachment = attachment;
+        }
+
+        private void enqueue(GameMessage message) {
+            synchronized (this) {
+                if (!reserve(MessageCodec.frameLength(message))) {
+                    return;
+                }
+                MessageCodec.encode(message, writeBuffer);
+            }
+            scheduleFlush();
+        }
+
+        private void enqueue(ByteBuffer frame) {
+            synchronized (this) {
+                if (!reserve(frame.remaining())) {
+                    return;
+                }
+                writeBuffer.put(frame.duplicate());
+            }
+            scheduleFlush();
+        }
+
+        // Makes room for the given number of bytes, or closes a peer that
+        // has stopped reading. Caller holds the lock.
+        private boolean reserve(int bytes) {
+            if (closed) {
+                return false;
+            }
+            int needed = writeBuffer.position() + bytes;
+            if (needed > MAX_PENDING_WRITE_BYTES) {
+                EventLog.warn("connection.dropped", "id", id, "pending", needed);
+                NioGameServer.this.close(this);
+                return false;
+            }
+            if (needed > writeBuffer.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(needed, writeBuffer.capacity() * 2));
+                writeBuffer.flip();
+                grown.put(writeBuffer);
+                writeBuffer = grown;
+            }
+            return true;
+        }
+
+        private void scheduleFlush() {
+            if (flushScheduled.compareAndSet(false, true)) {
+                loop.execute(() -> loop.flush(this));
+            }
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private long nextSweepNanos = System.nanoTime() + heartbeatNanos;
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "nio-loop-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (isRunning.get()) {
+                    if (!tasks.isEmpty()) {
+                        selector.selectNow();
+                    } else if (heartbeatNanos > 0) {
+                        long wait = TimeUnit.NANOSECONDS.toMillis(nextSweepNanos - System.nanoTime());
+                        selector.select(Math.max(1, wait));
+                    } else {
+                        selector.select();
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handleKey(key);
+                    }
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            EventLog.error("nio.task_failed", e);
+                        }
+                    }
+                    if (heartbeatNanos > 0 && System.nanoTime() - nextSweepNanos >= 0) {
+                        sweep();
+                        nextSweepNanos = System.nanoTime() + heartbeatNanos;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                EventLog.error("nio.loop_failed", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        close((Connection) key.attachment());
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    EventLog.warn("nio.selector_close_failed", e);
+                }
+            }
+        }
+
+        private void sweep() {
+            long now = System.nanoTime();
+            for (SelectionKey key : selector.keys()) {
+                if (!(key.attachment() instanceof Connection)) {
+                    continue;
+                }
+                Connection connection = (Connection) key.attachment();
+                long idle = now - connection.lastReadNanos;
+                if (idleTimeoutNanos > 0 && idle > idleTimeoutNanos) {
+                    EventLog.warn("connection.idle_timeout", "id", connection.id,
+                        "idleMillis", TimeUnit.NANOSECONDS.toMillis(idle));
+                    close(connection);
+                } else if (idle >= heartbeatNanos && connection.handshakeDone) {
+                    connection.enqueue(new GameMessage(GameMessage.MessageType.PING, now));
+                }
+            }
+        }
+
+        private void handleKey(SelectionKey key) {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    read(connection);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flush(connection);
+                }
+            } catch (IOException e) {
+                EventLog.info("connection.failed", "id", connection.id, "error", e.getMessage());
+                close(connection);
+            } catch (RuntimeException e) {
+                // A bug in decoding or in a handler costs this connection,
+                // not the loop and every other connection on it
+                EventLog.error("connection.handler_failed", "id", connection.id, e);
+                close(connection);
+            }
+        }
+
+        private void accept() {
+            try {
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    EventLoop target = loops[nextLoop++ % loops.length];
+                    Connection connection = new Connection(nextConnectionId.getAndIncrement(), channel, target);
+                    target.execute(() -> target.register(connection));
+                }
+            } catch (IOException e) {
+                if (isRunning.get()) {
+                    EventLog.warn("connection.accept_failed", e);
+                }
+            }
+        }
+
+        private void register(Connection connection) {
+            try {
+                connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.put(connection.id, connection);
+                synchronized (connection) {
+                    MessageCodec.writeHandshake(connection.writeBuffer);
+                }
+                flush(connection);
+            } catch (IOException e) {
+                EventLog.warn("connection.register_failed", e);
+                close(connection);
+            }
+        }
+
+        private void read(Connection connection) throws IOException {
+            ByteBuffer buffer = connection.readBuffer;
+            if (connection.channel.read(buffer) < 0) {
+                close(connection);
+                return;
+            }
+            connection.lastReadNanos = System.nanoTime();
+            buffer.flip();
+            try {
+                if (!connection.handshakeDone) {
+                    if (buffer.remaining() < MessageCodec.HANDSHAKE_LENGTH) {
+                        return;
+                    }
+                    MessageCodec.readHandshake(buffer);
+                    connection.handshakeDone = true;
+                    ConnectionHandler handler = connectionHandler;
+                    if (handler != null) {
+                        handler.onConnected(connection);
+                    }
+                }
+                // Decode every complete frame; a partial one stays for the next read
+                while (!connection.closed && MessageCodec.completeFrameLength(buffer) > 0) {
+                    dispatch(connection, MessageCodec.decodeFrame(buffer));
+                }
+            } finally {
+                buffer.compact();
+            }
+            if (!buffer.hasRemaining()) {
+                // A single frame is larger than the buffer
+                if (buffer.capacity() >= MAX_READ_BUFFER_BYTES) {
+                    throw new IOException("Frame larger than " + MAX_READ_BUFFER_BYTES + " bytes");
+                }
+                ByteBuffer grown = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_READ_BUFFER_BYTES));
+                buffer.flip();
+                grown.put(buffer);
+                connection.readBuffer = grown;
+            }
+        }
+
+        private void dispatch(Connection connection, GameMessage message) {
+            // Heartbeats and latency probes; a PONG has already done its
+            // job by refreshing lastReadNanos
+            if (message.getType() == GameMessage.MessageType.PING) {
+                connection.enqueue(new GameMessage(GameMessage.MessageType.PONG, message.getTimestamp()));
+                return;
+            }
+            if (message.getType() == GameMessage.MessageType.PONG) {
+                return;
+            }
+            ConnectionHandler handler = connectionHandler;
+            if (handler != null) {
+                handler.onMessage(connection, message);
+            }
+            GameServer.MessageHandler simpleHandler = messageHandler;
+            if (simpleHandler != null) {
+                simpleHandler.onMessageReceived(message);
+            }
+        }
+
+        private void flush(Connection connection) {
+            if (connection.closed) {
+                return;
+            }
+            try {
+                synchronized (connection) {
+                    connection.flushScheduled.set(false);
+                    ByteBuffer buffer = connection.writeBuffer;
+                    buffer.flip();
+                    connection.channel.write(buffer);
+                    buffer.compact();
+                    // Only ask for OP_WRITE while the socket is pushing back
+                    int ops = buffer.position() > 0
+                        ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                        : SelectionKey.OP_READ;
+                    if (connection.key.interestOps() != ops) {
+                        connection.key.interestOps(ops);
+                    }
+                }
+            } catch (IOException e) {
+                EventLog.info("connection.write_failed", "id", connection.id, "error", e.getMessage());
+                close(connection);
+            }
+        }
+
+        private void close(Connection connection) {
+            if (connection.closed) {
+                return;
+            }
+            connection.closed = true;
+            if (connection.key != null) {
+                connection.key.cancel();
+            }
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                EventLog.warn("connection.close_failed", "id", connection.id, e);
+            }
+            connections.remove(connection.id);
+            ConnectionHandler handler = connectionHandler;
+            if (handler != null && connection.handshakeDone) {
+                handler.onDisconnected(connection);
+            }
+        }
+    }
+}
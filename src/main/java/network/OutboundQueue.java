@@ -0,0 +1,290 @@
+package network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import log.EventLog;
+
+// Outgoing messages of one blocking socket connection. Senders only enqueue,
+// so a slow or stalled peer can no longer hold up the thread that sends,
+// usually the Swing event thread. A writer task takes whatever has queued
+// up, encodes it all and flushes once per batch, so a burst of messages
+// costs one write to the socket rather than one each.
+//
+// The queue is bounded. What happens when it is full is the overflow
+// policy's call; the messages of a turn-based game cannot be skipped
+// without the peers drifting apart, so by default a peer that far behind
+// is given up on and the connection is failed. The drop policies only ever
+// drop messages without a sequence number, such as pings: a message
+// numbered for a ResumableSession is never dropped, since the peer would
+// then be one behind for good, so the connection fails instead and the
+// resume that follows resends it.
+public class OutboundQueue {
+    public enum OverflowPolicy {
+        // Wait up to the block timeout for room, then fail the connection
+        BLOCK,
+        // Discard the message being sent
+        DROP_NEWEST,
+        // Discard the oldest queued message to make room
+        DROP_OLDEST,
+        // Fail the connection straight away
+        DISCONNECT;
+
+        // The policy of that name, or DISCONNECT if there is none, so that a
+        // mistyped setting does not stop the game from starting.
+        public static OverflowPolicy parse(String name) {
+            if (name != null) {
+                try {
+                    return valueOf(name.trim().toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    EventLog.warn("config.invalid_send_queue_policy", "value", name, "using", DISCONNECT);
+                }
+            }
+            return DISCONNECT;
+        }
+    }
+
+    private static final class Entry {
+        final GameMessage message;
+        final long enqueuedAt;
+
+        Entry(GameMessage message, long enqueuedAt) {
+            this.message = message;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    // How long BLOCK waits for room, and how long closing waits for the
+    // queued messages to go out
+    public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 1000;
+    public static final long DEFAULT_LINGER_MILLIS = 250;
+
+    // Wakes the writer when the queue is closed
+    private static final Entry CLOSE = new Entry(null, 0);
+
+    private final String name;
+    private final OutputStream out;
+    private final MessageCodec codec;
+    private final BlockingQueue<Entry> queue;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutMillis;
+    private final Runnable onFailure;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private volatile boolean closed;
+    private volatile boolean aborted;
+    private volatile Thread writer;
+
+    // Updated by senders
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    // Updated by the writer only
+    private volatile long written;
+    private volatile long flushes;
+    private volatile long totalTimeToWireNanos;
+    private volatile long maxTimeToWireNanos;
+
+    // onFailure is called once if the connection has to be given up, either
+    // because a write failed or because the queue overflowed. It may run on
+    // the writer or on a sending thread.
+    public OutboundQueue(String name, OutputStream out, MessageCodec codec, int capacity,
+            OverflowPolicy policy, long blockTimeoutMillis, Runnable onFailure) {
+        this.name = name;
+        this.out = out;
+        this.codec = codec;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.onFailure = onFailure;
+    }
+
+    public void start(ExecutorService executor) {
+        executor.submit(this::writeLoop);
+    }
+
+    // Queues the message and returns at once, unless the queue is full and
+    // the policy is BLOCK. Returns false if the message will not be sent.
+    public boolean send(GameMessage message) {
+        if (closed) {
+            return false;
+        }
+        Entry entry = new Entry(message, System.nanoTime());
+        boolean queued = queue.offer(entry);
+        if (!queued) {
+            queued = overflow(entry);
+        }
+        if (queued) {
+            enqueued.incrementAndGet();
+            maxDepth.accumulateAndGet(queue.size(), Math::max);
+        } else {
+            dropped.incrementAndGet();
+        }
+        return queued;
+    }
+
+    private boolean overflow(Entry entry) {
+        switch (policy) {
+            case BLOCK:
+                try {
+                    if (queue.offer(entry, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                fail("outbound queue still full after " + blockTimeoutMillis + " ms");
+                return false;
+            case DROP_NEWEST:
+                if (entry.message.getNumber() != 0) {
+                    fail("outbound queue full (" + capacity + " messages) at message " + entry.message.getNumber());
+                }
+                return false;
+            case DROP_OLDEST:
+                while (!queue.offer(entry)) {
+                    Entry oldest = queue.poll();
+                    if (oldest != null && oldest.message != null && oldest.message.getNumber() != 0) {
+                        fail("outbound queue full (" + capacity + " messages) at message "
+                            + oldest.message.getNumber());
+                        return false;
+                    }
+                    if (oldest != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                return true;
+            case DISCONNECT:
+            default:
+                fail("outbound queue full (" + capacity + " messages)");
+                return false;
+        }
+    }
+
+    // Stops taking messages. What is already queued is still written, and
+    // the caller waits up to lingerMillis for that before it goes on to
+    // close the socket, much like SO_LINGER.
+    public void close(long lingerMillis) {
+        if (!closed) {
+            closed = true;
+            // If the queue is full the writer is busy and sees the flag anyway
+            queue.offer(CLOSE);
+        }
+        if (aborted || Thread.currentThread() == writer) {
+            return;
+        }
+        try {
+            finished.await(lingerMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fail(String reason) {
+        if (aborted) {
+            return;
+        }
+        aborted = true;
+        closed = true;
+        queue.clear();
+        queue.offer(CLOSE);
+        EventLog.warn("queue.failed", "connection", name, "reason", reason);
+        onFailure.run();
+    }
+
+    private void writeLoop() {
+        writer = Thread.currentThread();
+        List<Entry> batch = new ArrayList<>();
+        try {
+            while (!aborted) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                writeBatch(batch);
+                batch.clear();
+                if (closed && queue.isEmpty()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            if (!aborted) {
+                EventLog.warn("queue.write_failed", "connection", name, e);
+                fail("write failed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private void writeBatch(List<Entry> batch) throws IOException {
+        int count = 0;
+        for (Entry entry : batch) {
+            if (entry.message != null && !aborted) {
+                codec.writeMessage(entry.message, out);
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        out.flush();
+
+        long now = System.nanoTime();
+        long total = 0;
+        long max = maxTimeToWireNanos;
+        for (Entry entry : batch) {
+            if (entry.message != null) {
+                long timeToWire = now - entry.enqueuedAt;
+                total += timeToWire;
+                max = Math.max(max, timeToWire);
+            }
+        }
+        totalTimeToWireNanos += total;
+        maxTimeToWireNanos = max;
+        written += count;
+        flushes++;
+    }
+
+    // Metrics. Time to wire runs from send() until the flush that carried
+    // the message returned, so it includes any time spent queued behind a
+    // slow peer.
+
+    public int getDepth() { return queue.size(); }
+    public int getMaxDepth() { return maxDepth.get(); }
+    public int getCapacity() { return capacity; }
+    public OverflowPolicy getPolicy() { return policy; }
+    public long getEnqueuedCount() { return enqueued.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public long getWrittenCount() { return written; }
+    public long getFlushCount() { return flushes; }
+    public long getMaxTimeToWireNanos() { return maxTimeToWireNanos; }
+
+    public long getAverageTimeToWireNanos() {
+        long count = written;
+        return count == 0 ? 0 : totalTimeToWireNanos / count;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: depth=%d (max %d of %d), sent=%d in %d flushes, dropped=%d, "
+                + "time to wire avg=%.2f ms max=%.2f ms",
+            name, getDepth(), getMaxDepth(), capacity, getWrittenCount(), getFlushCount(), getDroppedCount(),
+            getAverageTimeToWireNanos() / 1e6, getMaxTimeToWireNanos() / 1e6);
+    }
+}
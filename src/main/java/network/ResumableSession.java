@@ -0,0 +1,120 @@
+package network;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+// The part of a GameServer-GameClient link that outlives any one socket,
+// so a dropped connection can be picked up again without losing the game.
+//
+// Both ends number the game messages they send, 1, 2, 3 and so on, and
+// every message goes on the wire with its number. When a client reconnects
+// it sends RESUME with the session token and the last number it received;
+// the server answers with its own RESUME and each side resends from its
+// replay buffer whatever the other has not seen. The buffer keeps the last
+// REPLAY_CAPACITY messages, so a peer that missed more than that cannot
+// resume.
+//
+// Because the numbers travel with the messages, a receiver never has to
+// trust that it got everything that was sent. A message it already has,
+// replayed after a resume, is dropped; one that skips ahead, because the
+// sender's queue refused or discarded those in between, fails the
+// connection, and the resume that follows resends the missing ones.
+//
+// Pings and RESUME itself belong to a single socket and are not numbered.
+public class ResumableSession {
+    public static final int REPLAY_CAPACITY = 1024;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private volatile String token;
+    private final GameMessage[] replay = new GameMessage[REPLAY_CAPACITY];
+    // Sequence numbers of the last message sent and received
+    private long sent;
+    private long received;
+
+    // The token may be null until the server has issued one.
+    public ResumableSession(String token) {
+        this.token = token;
+    }
+
+    public static String newToken() {
+        byte[] bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return token.toString();
+    }
+
+    public static boolean isSequenced(GameMessage message) {
+        switch (message.getType()) {
+            case PING:
+            case PONG:
+            case RESUME:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    // Numbers the message and keeps it for replay. Returns the numbered
+    // message, which is the one to send.
+    public synchronized GameMessage recordSent(GameMessage message) {
+        sent++;
+        GameMessage numbered = message.withNumber(sent);
+        replay[(int) (sent % REPLAY_CAPACITY)] = numbered;
+        return numbered;
+    }
+
+    // Takes note of a message from the peer. Returns false if it was already
+    // received, and throws if messages before it are missing. A message
+    // without a number comes from a peer outside any session, such as a
+    // room server, and is always taken.
+    public synchronized boolean recordReceived(GameMessage message) throws IOException {
+        long number = message.getNumber();
+        if (number == 0) {
+            return true;
+        }
+        if (number <= received) {
+            return false;
+        }
+        if (number != received + 1) {
+            throw new IOException("Missed messages " + (received + 1) + " to " + (number - 1));
+        }
+        received = number;
+        return true;
+    }
+
+    public synchronized long getSentSequence() {
+        return sent;
+    }
+
+    public synchronized long getReceivedSequence() {
+        return received;
+    }
+
+    // Whether everything after the peer's last received message is still
+    // in the replay buffer.
+    public synchronized boolean canResumeFrom(long acknowledged) {
+        return acknowledged >= 0 && acknowledged <= sent && sent - acknowledged <= REPLAY_CAPACITY;
+    }
+
+    // The messages sent after the given one, oldest first.
+    public synchronized List<GameMessage> sentAfter(long acknowledged) {
+        List<GameMessage> missed = new ArrayList<>((int) (sent - acknowledged));
+        for (long seq = acknowledged + 1; seq <= sent; seq++) {
+            missed.add(replay[(int) (seq % REPLAY_CAPACITY)]);
+        }
+        return missed;
+    }
+}
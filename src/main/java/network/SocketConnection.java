@@ -0,0 +1,142 @@
+package network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import config.GameConfig;
+import log.EventLog;
+
+// One socket of a GameServer or GameClient, with everything that lives and
+// dies with it: the streams, the outbound queue and its writer, the pings
+// and their round-trip times. A session that is resumed gets a new one.
+final class SocketConnection {
+    private final String name;
+    private final Socket socket;
+    private final InputStream in;
+    private final MessageCodec readCodec = new MessageCodec();
+    private final OutboundQueue outbound;
+    private final LatencyStats latency = new LatencyStats();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile ScheduledFuture<?> pinger;
+
+    // Exchanges protocol handshakes on a freshly connected socket and
+    // starts its writer. The socket is closed if that fails.
+    static SocketConnection open(Socket socket, String name, ExecutorService executor) throws IOException {
+        try {
+            GameConfig config = GameConfig.getInstance();
+            socket.setTcpNoDelay(true);
+            // Reads, the handshake included, give up on a silent peer
+            socket.setSoTimeout(config.getIdleTimeoutMillis());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            MessageCodec.writeHandshake(out);
+            MessageCodec.readHandshake(in);
+            SocketConnection connection = new SocketConnection(name, socket, in, out);
+            connection.outbound.start(executor);
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private SocketConnection(String name, Socket socket, InputStream in, OutputStream out) {
+        GameConfig config = GameConfig.getInstance();
+        this.name = name;
+        this.socket = socket;
+        this.in = in;
+        // A failed write closes the socket, which ends the reader and with
+        // it the connection
+        this.outbound = new OutboundQueue(name, out, new MessageCodec(), config.getSendQueueCapacity(),
+            OutboundQueue.OverflowPolicy.parse(config.getSendQueuePolicy()),
+            OutboundQueue.DEFAULT_BLOCK_TIMEOUT_MILLIS, this::closeSocket);
+    }
+
+    // Pings the peer from now on; the pings double as heartbeats that keep
+    // its idle timeout from firing while we are alive.
+    void startPinging() {
+        int interval = GameConfig.getInstance().getHeartbeatIntervalMillis();
+        if (interval > 0) {
+            pinger = ConnectionExecutors.timer().scheduleAtFixedRate(
+                () -> send(new GameMessage(GameMessage.MessageType.PING, System.nanoTime())),
+                0, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Null at the end of the stream
+    GameMessage read() throws IOException {
+        return readCodec.readMessage(in);
+    }
+
+    boolean send(GameMessage message) {
+        return outbound.send(message);
+    }
+
+    // Answers or measures a latency probe. Probes never reach the game, and
+    // a PONG queues behind any moves already sent, so they never reorder
+    // them. Returns false for every other message.
+    boolean handleProbe(GameMessage message) {
+        if (message.getType() == GameMessage.MessageType.PING) {
+            send(new GameMessage(GameMessage.MessageType.PONG, message.getTimestamp()));
+            return true;
+        }
+        if (message.getType() == GameMessage.MessageType.PONG) {
+            long rtt = System.nanoTime() - message.getTimestamp();
+            latency.record(rtt);
+            if (EventLog.DEBUG) {
+                EventLog.debug("latency.sample", "connection", name, "rttMicros", rtt / 1000);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Stops pinging, lets what is already queued, such as a DISCONNECT,
+    // reach the peer and closes the socket.
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledFuture<?> task = pinger;
+        if (task != null) {
+            task.cancel(false);
+        }
+        outbound.close(OutboundQueue.DEFAULT_LINGER_MILLIS);
+        // Closing the socket closes both streams and breaks a write that is
+        // stuck on a peer that stopped reading; the buffered streams must
+        // not be closed first, as flushing them would wait for that write
+        closeSocket();
+    }
+
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            EventLog.warn("connection.close_failed", "connection", name, e);
+        }
+    }
+
+    boolean isOpen() {
+        return !closed.get() && !socket.isClosed();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    LatencyStats getLatencyStats() {
+        return latency;
+    }
+
+    OutboundQueue getOutboundQueue() {
+        return outbound;
+    }
+}
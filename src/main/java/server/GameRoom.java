@@ -0,0 +1,273 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import model.Board;
+import model.CellIndexList;
+import model.GameSession;
+import model.GameSnapshot;
+import model.RevealDelta;
+import network.GameMessage;
+import network.MessageCodec;
+import network.NioGameServer;
+import network.NioGameServer.Connection;
+
+// One two-player match on the room server, played in fog-of-war mode: only
+// the room's board knows the mines, and both players are sent what each
+// move uncovers, exactly as a fog-of-war host would send it to its client.
+//
+// Any number of spectators may watch. A late joiner first gets a snapshot
+// of the game so far, then the same live events as the players: each is
+// encoded once and the same frame is copied into every spectator's write
+// buffer. A spectator that stops keeping up is skipped until its backlog
+// drains and then caught up with a fresh snapshot, so it only ever sees
+// the game downsampled and never delays the players; one that falls too
+// far behind is dropped.
+//
+// All state is guarded by the room's own lock. Rooms share nothing but the
+// server's connections, so a busy room never holds up any other.
+public class GameRoom implements GameSession.Listener {
+    public static final int SEATS = 2;
+    public static final int SPECTATOR = -1;
+    private static final int SPECTATOR_LAG_BYTES = 64 * 1024;
+    private static final int SPECTATOR_DROP_BYTES = 1024 * 1024;
+
+    private static final class Spectator {
+        final Connection connection;
+        // Events have been skipped since the last one it was sent
+        boolean lagging;
+
+        Spectator(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private final String name;
+    private final NioGameServer server;
+    private final GameSession session = new GameSession(SEATS);
+    private final Connection[] players = new Connection[SEATS];
+    private final List<Spectator> spectators = new ArrayList<>();
+    private int playerCount;
+    private boolean closed;
+
+    public GameRoom(String name, NioGameServer server) {
+        this.name = name;
+        this.server = server;
+        session.addListener(this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Seats the player and returns the seat, or -1 if the room is full or
+    // has already been closed. Once both seats are taken each player is
+    // told the other's name and seat 0 may move.
+    public synchronized int join(Connection connection, String playerName) {
+        if (closed || playerCount == SEATS) {
+            return -1;
+        }
+        int seat = players[0] == null ? 0 : 1;
+        players[seat] = connection;
+        playerCount++;
+        session.setPlayerName(seat, playerName);
+        server.send(connection, new GameMessage(GameMessage.MessageType.ROOM_JOINED, seat, 0));
+        if (playerCount == SEATS) {
+            for (int i = 0; i < SEATS; i++) {
+                server.send(players[i], new GameMessage(GameMessage.MessageType.PLAYER_JOINED,
+                    session.getPlayerName(1 - i)));
+            }
+        }
+        sendSnapshotToSpectators();
+        return seat;
+    }
+
+    // Adds a spectator and sends it the game so far. Returns false if the
+    // room has been closed.
+    public synchronized boolean watch(Connection connection) {
+        if (closed) {
+            return false;
+        }
+        spectators.add(new Spectator(connection));
+        server.send(connection, new GameMessage(GameMessage.MessageType.ROOM_JOINED, SPECTATOR, 0));
+        server.send(connection, new GameMessage(GameMessage.MessageType.SNAPSHOT, GameSnapshot.capture(session)));
+        return true;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized int getSpectatorCount() {
+        return spectators.size();
+    }
+
+    // Frees the player's seat, or removes the spectator, and tells the
+    // others. Returns true if no players are left, in which case the room
+    // is closed for good and its spectators are let go.
+    public synchronized boolean leave(Connection connection) {
+        int seat = seatOf(connection);
+        if (seat < 0) {
+            spectators.removeIf(spectator -> spectator.connection == connection);
+            return false;
+        }
+        players[seat] = null;
+        playerCount--;
+        Connection opponent = players[1 - seat];
+        if (opponent != null) {
+            server.send(opponent, new GameMessage(GameMessage.MessageType.DISCONNECT));
+        }
+        if (playerCount == 0) {
+            closed = true;
+            ByteBuffer frame = MessageCodec.encodeFrame(new GameMessage(GameMessage.MessageType.DISCONNECT));
+            for (Spectator spectator : spectators) {
+                server.send(spectator.connection, frame);
+            }
+            spectators.clear();
+        } else {
+            sendSnapshotToSpectators();
+        }
+        return closed;
+    }
+
+    public synchronized void handleMessage(Connection connection, GameMessage message) {
+        int seat = seatOf(connection);
+        if (seat < 0 || playerCount < SEATS) {
+            return;
+        }
+        switch (message.getType()) {
+            case MOVE:
+                if (!session.isPlayerTurn(seat) || message.isFlag()) {
+                    return;
+                }
+                if (!session.getBoard().areMinesPlaced()) {
+                    if (!session.getBoard().isValidPosition(message.getX(), message.getY())) {
+                        return;
+                    }
+                    session.placeMines(message.getX(), message.getY());
+                }
+                session.reveal(seat, message.getX(), message.getY());
+                break;
+            case RESET_REQUEST:
+                // The sender has already reset its own view
+                session.reset();
+                server.send(players[1 - seat], new GameMessage(GameMessage.MessageType.RESET_REQUEST));
+                break;
+            default:
+                // The room decides every outcome itself, so GAME_OVER claims
+                // and the like from players are ignored
+                break;
+        }
+    }
+
+    // Called once a second by the server's clock.
+    public synchronized void tick() {
+        session.tick();
+    }
+
+    private int seatOf(Connection connection) {
+        for (int i = 0; i < SEATS; i++) {
+            if (players[i] == connection) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Session events, delivered under the room's lock
+
+    @Override
+    public void cellsRevealed(int player, int x, int y, CellIndexList cells) {
+        // The delta is encoded at most twice: once for the mover and once,
+        // with the flag that hands over the turn, for the opponent
+        RevealDelta delta = RevealDelta.capture(session.getBoard(), cells);
+        ByteBuffer plain = null;
+        ByteBuffer handsTurn = null;
+        for (int i = 0; i < SEATS; i++) {
+            if (players[i] == null) {
+                continue;
+            }
+            boolean flag = player != GameSession.NO_PLAYER && player != i;
+            ByteBuffer frame = flag ? handsTurn : plain;
+            if (frame == null) {
+                frame = MessageCodec.encodeFrame(
+                    new GameMessage(GameMessage.MessageType.REVEAL_DELTA, x, y, flag, delta));
+                if (flag) {
+                    handsTurn = frame;
+                } else {
+                    plain = frame;
+                }
+            }
+            server.send(players[i], frame);
+        }
+        if (!spectators.isEmpty()) {
+            if (plain == null) {
+                plain = MessageCodec.encodeFrame(
+                    new GameMessage(GameMessage.MessageType.REVEAL_DELTA, x, y, false, delta));
+            }
+            sendToSpectators(plain);
+        }
+    }
+
+    @Override
+    public void gameOver(int winner, GameSession.EndReason reason) {
+        // GAME_OVER's flag says whether the sender won, so each player is
+        // told the opposite of their own result
+        for (int i = 0; i < SEATS; i++) {
+            if (players[i] != null) {
+                server.send(players[i], new GameMessage(GameMessage.MessageType.GAME_OVER, 0, 0, winner != i));
+            }
+        }
+        // The snapshot carries the winner, which GAME_OVER cannot tell a spectator
+        sendSnapshotToSpectators();
+    }
+
+    @Override
+    public void sessionReset(Board board) {
+        sendSnapshotToSpectators();
+    }
+
+    // Spectators. Rare changes such as players coming and going, the end of
+    // a game or a reset are sent as whole snapshots; moves as deltas.
+
+    private void sendSnapshotToSpectators() {
+        if (!spectators.isEmpty()) {
+            sendToSpectators(null);
+        }
+    }
+
+    // Sends the frame, or a snapshot if the frame is null, to every spectator
+    // that is keeping up. The snapshot is encoded at most once, and only if
+    // someone needs it.
+    private void sendToSpectators(ByteBuffer frame) {
+        ByteBuffer snapshot = null;
+        for (Iterator<Spectator> it = spectators.iterator(); it.hasNext(); ) {
+            Spectator spectator = it.next();
+            Connection connection = spectator.connection;
+            int pending = connection.getPendingWriteBytes();
+            if (!connection.isOpen() || pending > SPECTATOR_DROP_BYTES) {
+                it.remove();
+                server.close(connection);
+                continue;
+            }
+            if (pending > SPECTATOR_LAG_BYTES) {
+                spectator.lagging = true;
+                continue;
+            }
+            ByteBuffer out = frame;
+            if (frame == null || spectator.lagging) {
+                // Taken after the event, so it already includes it
+                if (snapshot == null) {
+                    snapshot = MessageCodec.encodeFrame(
+                        new GameMessage(GameMessage.MessageType.SNAPSHOT, GameSnapshot.capture(session)));
+                }
+                out = snapshot;
+                spectator.lagging = false;
+            }
+            server.send(connection, out);
+        }
+    }
+}
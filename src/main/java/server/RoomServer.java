@@ -0,0 +1,203 @@
+package server;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import log.EventLog;
+import network.GameMessage;
+import network.NioGameServer;
+import network.NioGameServer.Connection;
+
+// Headless server hosting any number of independent GameRooms over one
+// NioGameServer. Nothing here touches Swing or GameState, so a single JVM
+// can run thousands of matches.
+//
+// A client announces its name with PLAYER_JOINED, then sends CREATE_ROOM or
+// JOIN_ROOM with a room name and is answered with ROOM_JOINED (its seat) or
+// ROOM_ERROR. From then on it plays like a fog-of-war client. WATCH_ROOM
+// joins as a spectator instead, answered with ROOM_JOINED for seat
+// GameRoom.SPECTATOR, a SNAPSHOT and then the live events. The registry
+// is a ConcurrentHashMap and each room locks only itself, so rooms never
+// wait on each other; the only thread they share is the once-a-second clock.
+public class RoomServer implements NioGameServer.ConnectionHandler {
+    private static final String DEFAULT_PLAYER_NAME = "Player";
+
+    private final NioGameServer server;
+    private final Map<String, GameRoom> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "room-clock");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Per-connection state, kept in the connection's attachment and only
+    // touched by the connection's event loop. Read the room through roomOf.
+    private static final class Player {
+        String name = DEFAULT_PLAYER_NAME;
+        GameRoom room;
+    }
+
+    public RoomServer(int port, int eventLoops) {
+        this.server = new NioGameServer(port, eventLoops);
+        server.setConnectionHandler(this);
+    }
+
+    public void start() throws IOException {
+        server.start();
+        clock.scheduleAtFixedRate(this::tickRooms, 1, 1, TimeUnit.SECONDS);
+        EventLog.info("rooms.started", "port", server.getPort());
+    }
+
+    public void stop() {
+        clock.shutdownNow();
+        server.stop();
+    }
+
+    public boolean isRunning() {
+        return server.isRunning();
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    public int getConnectionCount() {
+        return server.getConnectionCount();
+    }
+
+    private void tickRooms() {
+        for (GameRoom room : rooms.values()) {
+            room.tick();
+        }
+    }
+
+    @Override
+    public void onConnected(Connection connection) {
+        connection.setAttachment(new Player());
+    }
+
+    @Override
+    public void onMessage(Connection connection, GameMessage message) {
+        Player player = (Player) connection.getAttachment();
+        switch (message.getType()) {
+            case PLAYER_JOINED:
+                if (message.getPlayerName() != null && !message.getPlayerName().isEmpty()) {
+                    player.name = message.getPlayerName();
+                }
+                break;
+            case CREATE_ROOM:
+                createRoom(connection, player, message.getText());
+                break;
+            case JOIN_ROOM:
+                joinRoom(connection, player, message.getText());
+                break;
+            case WATCH_ROOM:
+                watchRoom(connection, player, message.getText());
+                break;
+            case DISCONNECT:
+                server.close(connection);
+                break;
+            default:
+                GameRoom room = roomOf(player);
+                if (room != null) {
+                    room.handleMessage(connection, message);
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void onDisconnected(Connection connection) {
+        Player player = (Player) connection.getAttachment();
+        if (player != null && roomOf(player) != null) {
+            leaveRoom(connection, player);
+        }
+    }
+
+    private void createRoom(Connection connection, Player player, String name) {
+        if (!canEnterRoom(connection, player, name)) {
+            return;
+        }
+        GameRoom room = new GameRoom(name, server);
+        if (rooms.putIfAbsent(name, room) != null) {
+            sendError(connection, "Room " + name + " already exists");
+            return;
+        }
+        enterRoom(connection, player, room);
+    }
+
+    private void joinRoom(Connection connection, Player player, String name) {
+        if (!canEnterRoom(connection, player, name)) {
+            return;
+        }
+        GameRoom room = rooms.get(name);
+        if (room == null) {
+            sendError(connection, "No room named " + name);
+            return;
+        }
+        enterRoom(connection, player, room);
+    }
+
+    private void watchRoom(Connection connection, Player player, String name) {
+        if (!canEnterRoom(connection, player, name)) {
+            return;
+        }
+        GameRoom room = rooms.get(name);
+        if (room == null || !room.watch(connection)) {
+            sendError(connection, "No room named " + name);
+            return;
+        }
+        player.room = room;
+    }
+
+    private boolean canEnterRoom(Connection connection, Player player, String name) {
+        if (name == null || name.isEmpty()) {
+            sendError(connection, "Room name is required");
+            return false;
+        }
+        if (roomOf(player) != null) {
+            sendError(connection, "Already in room " + player.room.getName());
+            return false;
+        }
+        return true;
+    }
+
+    private void enterRoom(Connection connection, Player player, GameRoom room) {
+        if (room.join(connection, player.name) < 0) {
+            // Full, or emptied and closed since we looked it up
+            sendError(connection, "Room " + room.getName() + " is not open");
+            return;
+        }
+        player.room = room;
+    }
+
+    // The player's room, or null. A room closed by its last player lets its
+    // spectators go without touching their Players, which belong to other
+    // event loops, so each spectator drops the room here when it next looks.
+    private static GameRoom roomOf(Player player) {
+        if (player.room != null && player.room.isClosed()) {
+            player.room = null;
+        }
+        return player.room;
+    }
+
+    private void leaveRoom(Connection connection, Player player) {
+        GameRoom room = player.room;
+        player.room = null;
+        if (room.leave(connection)) {
+            rooms.remove(room.getName(), room);
+        }
+    }
+
+    private void sendError(Connection connection, String reason) {
+        server.send(connection, new GameMessage(GameMessage.MessageType.ROOM_ERROR, reason));
+    }
+}
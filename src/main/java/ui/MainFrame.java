@@ -7,6 +7,7 @@ import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 
+import log.EventLog;
 import ui.pages.AboutPage;
 import ui.pages.GamePage;
 import ui.pages.HelpPage;
@@ -76,7 +77,7 @@ public class MainFrame extends JFrame {
                 // Show the game page
                 cardLayout.show(contentPanel, GAME_PAGE);
             } catch (Exception e) {
-                e.printStackTrace();
+                EventLog.error("ui.game_page_failed", e);
             }
         });
     }
@@ -0,0 +1,122 @@
+package ui;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import network.GameMessage;
+import ui.components.BoardView;
+
+// Collects changed cells and incoming network messages and applies them on
+// the EDT in one pass, at most once per display frame. Network threads post
+// messages from any thread; the game logic marks cells dirty from the EDT.
+// A burst of traffic or a big cascade therefore costs one queued task and
+// one repaint per frame instead of one per message or per cell.
+public class UpdateBatcher {
+    private static final int FRAME_MILLIS = 16;
+
+    private final BoardView boardView;
+    private final Consumer<GameMessage> messageHandler;
+    private final Queue<GameMessage> pendingMessages = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Timer frameTimer;
+
+    // Bounding box of the cells changed since the last flush (EDT only)
+    private int dirtyMinX = Integer.MAX_VALUE;
+    private int dirtyMinY = Integer.MAX_VALUE;
+    private int dirtyMaxX = -1;
+    private int dirtyMaxY = -1;
+    // Set while flush hands out messages; cells they mark dirty are
+    // repainted by the same flush and need no frame of their own (EDT only)
+    private boolean flushing;
+
+    private final AtomicLong updates = new AtomicLong();
+    private long flushes;
+
+    public UpdateBatcher(BoardView boardView, Consumer<GameMessage> messageHandler) {
+        this.boardView = boardView;
+        this.messageHandler = messageHandler;
+        this.frameTimer = new Timer(FRAME_MILLIS, e -> flush());
+        this.frameTimer.setRepeats(false);
+    }
+
+    // Thread-safe; the message is handled on the EDT with the next frame.
+    public void post(GameMessage message) {
+        pendingMessages.add(message);
+        updates.incrementAndGet();
+        scheduleFlush();
+    }
+
+    // EDT only. The cell is repainted with the next frame.
+    public void markDirty(int x, int y) {
+        dirtyMinX = Math.min(dirtyMinX, x);
+        dirtyMinY = Math.min(dirtyMinY, y);
+        dirtyMaxX = Math.max(dirtyMaxX, x);
+        dirtyMaxY = Math.max(dirtyMaxY, y);
+        updates.incrementAndGet();
+        if (!flushing) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            if (SwingUtilities.isEventDispatchThread()) {
+                frameTimer.restart();
+            } else {
+                SwingUtilities.invokeLater(frameTimer::restart);
+            }
+        }
+    }
+
+    // Applies everything that is pending right now, e.g. before a full
+    // board refresh that would make the queued repaints pointless.
+    public void flush() {
+        frameTimer.stop();
+        // Cleared before draining, so a message posted from another thread
+        // after the queue was emptied still gets a frame. If the drain picks
+        // it up after all, that frame finds nothing to do.
+        flushScheduled.set(false);
+        if (pendingMessages.isEmpty() && dirtyMaxX < 0) {
+            return;
+        }
+        flushes++;
+
+        // Messages first: handling them usually marks more cells dirty
+        flushing = true;
+        try {
+            GameMessage message;
+            while ((message = pendingMessages.poll()) != null) {
+                messageHandler.accept(message);
+            }
+        } finally {
+            flushing = false;
+        }
+
+        if (dirtyMaxX >= 0) {
+            boardView.repaintCells(dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY);
+            dirtyMinX = Integer.MAX_VALUE;
+            dirtyMinY = Integer.MAX_VALUE;
+            dirtyMaxX = -1;
+            dirtyMaxY = -1;
+        }
+    }
+
+    public long getUpdateCount() {
+        return updates.get();
+    }
+
+    public long getFlushCount() {
+        return flushes;
+    }
+
+    // Updates that were folded into an earlier flush rather than applied on their own
+    public long getCoalescedCount() {
+        return Math.max(0, updates.get() - flushes);
+    }
+}
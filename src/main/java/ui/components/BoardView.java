@@ -0,0 +1,239 @@
+package ui.components;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.JComponent;
+
+import model.Board;
+
+// Paints the whole board as one component straight from the model. Cells
+// are located by arithmetic instead of by per-cell widgets, and changes
+// only repaint the rectangles of the cells involved, so large boards open
+// and update in time proportional to what is visible or changed. As with
+// the old button grid, x selects the row and y the column.
+public class BoardView extends JComponent {
+    public interface CellListener {
+        void cellPressed(int x, int y, int mouseButton);
+    }
+
+    private static final Color CELL_UNREVEALED = new Color(80, 80, 95);
+    private static final Color CELL_REVEALED = new Color(50, 50, 60);
+    private static final Color CELL_HOVER = new Color(90, 90, 105);
+    private static final Color MINE_COLOR = new Color(220, 50, 50);
+    private static final Color GRID_COLOR = new Color(40, 40, 45);
+    private static final Color FRAME_COLOR = new Color(80, 80, 95);
+    private static final Color BEVEL_LIGHT = new Color(120, 120, 135);
+    private static final Color BEVEL_DARK = new Color(35, 35, 42);
+    private static final String MINE_SYMBOL = "✹";
+
+    private static final Color[] NUMBER_COLORS = {
+        Color.WHITE,
+        new Color(30, 144, 255),   // Dodger Blue
+        new Color(50, 205, 50),    // Lime Green
+        new Color(255, 69, 0),     // Red-Orange
+        new Color(138, 43, 226),   // Blue Violet
+        new Color(178, 34, 34),    // Firebrick
+        new Color(64, 224, 208),   // Turquoise
+        new Color(255, 215, 0),    // Gold
+        new Color(255, 255, 255)   // White
+    };
+
+    private static final int MAX_CELL_SIZE = 40;
+    private static final int MIN_CELL_SIZE = 12;
+    private static final int TARGET_BOARD_PIXELS = 800;
+    private static final int GAP = 2;
+    private static final int FRAME = 3;
+    private static final int PADDING = 4;
+    private static final int INSET = FRAME + PADDING;
+
+    private Board board;
+    private CellListener cellListener;
+    private int cellSize;
+    private int pitch;
+    private Font numberFont;
+    private Font mineFont;
+    private int hoverIndex = -1;
+
+    public BoardView(Board board) {
+        setOpaque(true);
+        setBoard(board);
+
+        MouseAdapter mouseHandler = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                int index = cellAt(e.getX(), e.getY());
+                if (index >= 0 && cellListener != null) {
+                    cellListener.cellPressed(BoardView.this.board.getX(index),
+                        BoardView.this.board.getY(index), e.getButton());
+                }
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                setHoverIndex(cellAt(e.getX(), e.getY()));
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                setHoverIndex(-1);
+            }
+        };
+        addMouseListener(mouseHandler);
+        addMouseMotionListener(mouseHandler);
+    }
+
+    public void setCellListener(CellListener cellListener) {
+        this.cellListener = cellListener;
+    }
+
+    // Switches to a new board, e.g. after a reset, and repaints everything.
+    public void setBoard(Board board) {
+        this.board = board;
+        this.hoverIndex = -1;
+        int size = board.getSize();
+        int newCellSize = Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, TARGET_BOARD_PIXELS / size - GAP));
+        if (newCellSize != cellSize) {
+            cellSize = newCellSize;
+            pitch = cellSize + GAP;
+            numberFont = new Font("Consolas", Font.BOLD, Math.max(8, cellSize / 2));
+            mineFont = new Font("Dialog", Font.BOLD, Math.max(8, cellSize / 2));
+        }
+        int pixels = size * pitch - GAP + 2 * INSET;
+        setPreferredSize(new Dimension(pixels, pixels));
+        revalidate();
+        repaint();
+    }
+
+    public void repaintCell(int x, int y) {
+        repaint(INSET + y * pitch, INSET + x * pitch, cellSize, cellSize);
+    }
+
+    public void repaintCell(int index) {
+        repaintCell(board.getX(index), board.getY(index));
+    }
+
+    // Repaints the block of cells between the two corners in one request.
+    public void repaintCells(int minX, int minY, int maxX, int maxY) {
+        repaint(INSET + minY * pitch, INSET + minX * pitch,
+            (maxY - minY) * pitch + cellSize, (maxX - minX) * pitch + cellSize);
+    }
+
+    // Returns the index of the cell under the given point, or -1 for the
+    // frame and the gaps between cells.
+    public int cellAt(int px, int py) {
+        int rx = px - INSET;
+        int ry = py - INSET;
+        if (rx < 0 || ry < 0 || rx % pitch >= cellSize || ry % pitch >= cellSize) {
+            return -1;
+        }
+        int x = ry / pitch;
+        int y = rx / pitch;
+        return board.isValidPosition(x, y) ? board.index(x, y) : -1;
+    }
+
+    public Rectangle getCellBounds(int x, int y) {
+        return new Rectangle(INSET + y * pitch, INSET + x * pitch, cellSize, cellSize);
+    }
+
+    private void setHoverIndex(int index) {
+        if (index == hoverIndex) {
+            return;
+        }
+        int previous = hoverIndex;
+        hoverIndex = index;
+        if (previous >= 0) {
+            repaintCell(previous);
+        }
+        if (index >= 0) {
+            repaintCell(index);
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2d = (Graphics2D) g.create();
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g2d.setColor(GRID_COLOR);
+        g2d.fillRect(clip.x, clip.y, clip.width, clip.height);
+        g2d.setColor(FRAME_COLOR);
+        int extent = board.getSize() * pitch - GAP + 2 * INSET;
+        for (int i = 0; i < FRAME; i++) {
+            g2d.drawRect(i, i, extent - 1 - 2 * i, extent - 1 - 2 * i);
+        }
+
+        // Only the cells intersecting the clip are painted
+        int size = board.getSize();
+        int minX = Math.max(0, (clip.y - INSET) / pitch);
+        int maxX = Math.min(size - 1, (clip.y + clip.height - INSET) / pitch);
+        int minY = Math.max(0, (clip.x - INSET) / pitch);
+        int maxY = Math.min(size - 1, (clip.x + clip.width - INSET) / pitch);
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                paintCell(g2d, x, y);
+            }
+        }
+        g2d.dispose();
+    }
+
+    private void paintCell(Graphics2D g2d, int x, int y) {
+        int index = board.index(x, y);
+        int px = INSET + y * pitch;
+        int py = INSET + x * pitch;
+
+        if (!board.isRevealed(index)) {
+            g2d.setColor(index == hoverIndex ? CELL_HOVER : CELL_UNREVEALED);
+            g2d.fillRect(px, py, cellSize, cellSize);
+            paintBevel(g2d, px, py, BEVEL_LIGHT, BEVEL_DARK);
+            return;
+        }
+
+        if (board.isMine(index)) {
+            g2d.setColor(MINE_COLOR);
+            g2d.fillRect(px, py, cellSize, cellSize);
+            paintBevel(g2d, px, py, BEVEL_DARK, BEVEL_LIGHT);
+            paintCentered(g2d, MINE_SYMBOL, mineFont, Color.WHITE, px, py);
+            return;
+        }
+
+        g2d.setColor(CELL_REVEALED);
+        g2d.fillRect(px, py, cellSize, cellSize);
+        paintBevel(g2d, px, py, BEVEL_DARK, CELL_REVEALED);
+        int adjacentMines = board.getAdjacentMines(index);
+        if (adjacentMines > 0) {
+            paintCentered(g2d, Integer.toString(adjacentMines), numberFont, NUMBER_COLORS[adjacentMines], px, py);
+        }
+    }
+
+    private void paintBevel(Graphics2D g2d, int px, int py, Color topLeft, Color bottomRight) {
+        int end = cellSize - 1;
+        g2d.setColor(topLeft);
+        g2d.drawLine(px, py, px + end, py);
+        g2d.drawLine(px, py, px, py + end);
+        g2d.setColor(bottomRight);
+        g2d.drawLine(px, py + end, px + end, py + end);
+        g2d.drawLine(px + end, py, px + end, py + end);
+    }
+
+    private void paintCentered(Graphics2D g2d, String text, Font font, Color color, int px, int py) {
+        g2d.setFont(font);
+        g2d.setColor(color);
+        FontMetrics metrics = g2d.getFontMetrics();
+        int tx = px + (cellSize - metrics.stringWidth(text)) / 2;
+        int ty = py + (cellSize - metrics.getHeight()) / 2 + metrics.getAscent();
+        g2d.drawString(text, tx, ty);
+    }
+}
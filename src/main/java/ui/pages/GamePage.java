@@ -4,71 +4,82 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Cursor;
-import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.GradientPaint;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.GridLayout;
-import java.awt.Insets;
 import java.awt.RenderingHints;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.IOException;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
-import javax.swing.border.Border;
-import javax.swing.border.CompoundBorder;
 
 import model.Board;
-import model.Cell;
+import model.CellIndexList;
+import model.GameSession;
 import model.GameState;
+import model.RevealDelta;
+import model.SnapshotCodec;
 import network.GameClient;
 import network.GameMessage;
 import network.GameServer;
+import network.LatencyStats;
+import config.GameConfig;
+import log.EventLog;
 import ui.MainFrame;
+import ui.UpdateBatcher;
+import ui.components.BoardView;
 import ui.theme.DarkTheme;
 
-public class GamePage extends JPanel {
+// A view of the current GameSession: it forwards clicks and messages from
+// the opponent to the session, renders the session's events and relays the
+// local player's moves over the connection.
+public class GamePage extends JPanel implements GameSession.Listener {
     private Board board;
-    private final JButton[][] buttonGrid;
-    private final JPanel boardPanel;
+    private final BoardView boardView;
+    private final UpdateBatcher updateBatcher;
     private final JLabel statusLabel;
     private final JLabel turnLabel;
     private final JLabel playersLabel;
     private final JLabel timerLabel;
+    private final JLabel progressLabel;
     private final GameState gameState;
-    private Timer turnTimer;
-    private int timeRemaining;
-    private static final int TURN_TIME = 60; // 1 minute per turn
-    private boolean isTimerPaused;
+    private final GameSession session;
+    private final int localPlayer;
+    private final int remotePlayer;
+    // Ticks the session's clock once a second while it is running
+    private final Timer turnTimer;
+    // Refreshes the round-trip time shown next to the players
+    private final Timer latencyTimer;
 
     // Enhanced color scheme
-    private static final Color CELL_UNREVEALED = new Color(80, 80, 95);
-    private static final Color CELL_REVEALED = new Color(50, 50, 60);
-    private static final Color CELL_HOVER = new Color(90, 90, 105);
-    private static final Color MINE_COLOR = new Color(220, 50, 50);
-    private static final Color GRID_COLOR = new Color(40, 40, 45);
     private static final Color HEADER_BG = new Color(30, 30, 40);
     private static final Font GAME_TITLE_FONT = new Font("Consolas", Font.BOLD, 18);
     private static final Font GAME_INFO_FONT = new Font("Consolas", Font.BOLD, 14);
-    private static final Font CELL_FONT = new Font("Consolas", Font.BOLD, 18);
     private static final Font BUTTON_FONT = new Font("Consolas", Font.BOLD, 14);
 
     public GamePage() {
         gameState = GameState.getInstance();
-        board = gameState.getBoard();
+        session = gameState.getSession();
+        board = session.getBoard();
+        localPlayer = gameState.getLocalPlayer();
+        remotePlayer = gameState.getRemotePlayer();
+        session.setPlayerName(localPlayer, gameState.getPlayerName());
         setLayout(new BorderLayout(10, 10));
         setBackground(DarkTheme.BACKGROUND.darker());
 
         // Create enhanced status panel with gradient background
-        JPanel statusPanel = new JPanel(new GridLayout(4, 1, 0, 5)) {
+        JPanel statusPanel = new JPanel(new GridLayout(5, 1, 0, 5)) {
             @Override
             protected void paintComponent(Graphics g) {
                 Graphics2D g2d = (Graphics2D) g.create();
@@ -105,53 +116,43 @@ public class GamePage extends JPanel {
         timerLabel.setFont(GAME_INFO_FONT);
         updateTimerLabel();
 
+        progressLabel = new JLabel("", SwingConstants.CENTER);
+        progressLabel.setForeground(new Color(180, 180, 180));
+        progressLabel.setFont(GAME_INFO_FONT);
+        updateProgressLabel();
+
         statusPanel.add(statusLabel);
         statusPanel.add(turnLabel);
         statusPanel.add(playersLabel);
         statusPanel.add(timerLabel);
+        statusPanel.add(progressLabel);
 
-        // Initialize timer after UI components
-        timeRemaining = TURN_TIME;
-        isTimerPaused = true;
-        turnTimer = new Timer(1000, e -> {
-            if (!isTimerPaused && timeRemaining > 0) {
-                timeRemaining--;
-                updateTimerLabel();
-                if (timeRemaining == 0) {
-                    turnTimer.stop();
-                    if (gameState.isMultiplayer() && !gameState.isGameOver()) {
-                        // If it's my turn and timer ran out, I lose
-                        if (gameState.isPlayerTurn()) {
-                            statusLabel.setText("You Lost! Time's up!");
-                            gameOver(false);
-                            sendGameOver(false);
-                        } else {
-                            // If it's opponent's turn and timer ran out, I win
-                            statusLabel.setText("You Won! Opponent ran out of time!");
-                            gameOver(true);
-                            sendGameOver(true);
-                        }
-                    }
-                }
+        turnTimer = new Timer(1000, e -> session.tick());
+        latencyTimer = new Timer(2000, e -> updatePlayersLabel());
+
+        // Initialize board
+        boardView = new BoardView(board);
+        boardView.setCellListener((x, y, mouseButton) -> {
+            if (session.isPlayerTurn(localPlayer) && mouseButton == MouseEvent.BUTTON1) {
+                handleLeftClick(x, y);
             }
         });
+        updateBatcher = new UpdateBatcher(boardView, this::handleMessage);
+        session.addListener(this);
+        gameState.startJournal();
 
         // Set up message handler for multiplayer
         if (gameState.isMultiplayer()) {
-            System.out.println("Setting up multiplayer game. Is host: " + gameState.isHost());
-            // Ensure game starts with host's turn
-            gameState.setPlayerTurn(gameState.isHost());
+            EventLog.info("game.multiplayer", "host", gameState.isHost(), "fogOfWar", GameConfig.getInstance().isFogOfWar());
             if (gameState.isHost()) {
                 GameServer server = gameState.getServer();
                 if (server != null) {
-                    server.setMessageHandler(message -> SwingUtilities.invokeLater(() -> handleMessage(message)));
-                    System.out.println("Host message handler set with EDT protection");
+                    server.setMessageHandler(updateBatcher::post);
                 }
             } else {
                 GameClient client = gameState.getClient();
                 if (client != null) {
-                    client.setMessageHandler(message -> SwingUtilities.invokeLater(() -> handleMessage(message)));
-                    System.out.println("Client message handler set with EDT protection");
+                    client.setMessageHandler(updateBatcher::post);
                 }
             }
             // Send player joined message after a short delay to ensure connection is ready
@@ -160,17 +161,12 @@ public class GamePage extends JPanel {
                     Thread.sleep(500); // Small delay to ensure connection is ready
                     SwingUtilities.invokeLater(() -> sendPlayerJoined());
                 } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    Thread.currentThread().interrupt();
                 }
             }).start();
+            latencyTimer.start();
         }
 
-        // Initialize board
-        buttonGrid = new JButton[board.getSize()][board.getSize()];
-        boardPanel = new JPanel(new GridLayout(board.getSize(), board.getSize(), 2, 2));
-        boardPanel.setBackground(GRID_COLOR);
-        createBoardPanel();
-
         // Add components
         add(statusPanel, BorderLayout.NORTH);
         JPanel boardContainer = new JPanel(new BorderLayout());
@@ -179,7 +175,12 @@ public class GamePage extends JPanel {
             BorderFactory.createLineBorder(new Color(60, 60, 70), 2),
             BorderFactory.createEmptyBorder(15, 15, 15, 15)
         ));
-        boardContainer.add(boardPanel, BorderLayout.CENTER);
+        JScrollPane boardScroll = new JScrollPane(boardView);
+        boardScroll.setBorder(BorderFactory.createEmptyBorder());
+        boardScroll.getViewport().setBackground(DarkTheme.BACKGROUND.darker());
+        boardScroll.getVerticalScrollBar().setUnitIncrement(16);
+        boardScroll.getHorizontalScrollBar().setUnitIncrement(16);
+        boardContainer.add(boardScroll, BorderLayout.CENTER);
         add(boardContainer, BorderLayout.CENTER);
         add(createControlPanel(), BorderLayout.SOUTH);
 
@@ -211,266 +212,122 @@ public class GamePage extends JPanel {
         });
     }
 
-    private void createBoardPanel() {
-        // Use a darker background for grid lines and fixed cell spacing
-        boardPanel.setLayout(new GridLayout(board.getSize(), board.getSize(), 2, 2));
-        boardPanel.setBackground(GRID_COLOR);
-        boardPanel.setBorder(BorderFactory.createCompoundBorder(
-            BorderFactory.createLineBorder(new Color(80, 80, 95), 3),
-            BorderFactory.createEmptyBorder(4, 4, 4, 4)
-        ));
-
-        // Ensure the board panel respects preferred sizes
-        boardPanel.setPreferredSize(new Dimension(
-            board.getSize() * 42 + 8,  // 40px cell + 2px spacing + 8px border
-            board.getSize() * 42 + 8
-        ));
-
-        for (int i = 0; i < board.getSize(); i++) {
-            for (int j = 0; j < board.getSize(); j++) {
-                JButton button = createCellButton(i, j);
-                buttonGrid[i][j] = button;
-                boardPanel.add(button);
-            }
-        }
-    }
-
-    private JButton createCellButton(int x, int y) {
-        JButton button = new JButton();
-
-        // Make perfectly square tiles with fixed dimensions
-        int cellSize = 40; // Size of each cell
-        button.setPreferredSize(new Dimension(cellSize, cellSize));
-        button.setMinimumSize(new Dimension(cellSize, cellSize));
-        button.setMaximumSize(new Dimension(cellSize, cellSize));
-
-        // Improved button styling
-        button.setBackground(CELL_UNREVEALED);
-        button.setForeground(Color.WHITE);
-        button.setFocusPainted(false);
-        button.setFont(CELL_FONT);
-        button.setMargin(new Insets(0, 0, 0, 0));
-
-        // Create a subtle 3D effect with custom border
-        Border line = BorderFactory.createLineBorder(GRID_COLOR, 1);
-        Border raised = BorderFactory.createRaisedBevelBorder();
-        button.setBorder(new CompoundBorder(line, raised));
-
-        // Add hover effect
-        button.addMouseListener(new MouseAdapter() {
-            @Override
-            public void mouseEntered(MouseEvent e) {
-                if (!board.getCells()[x][y].isRevealed()) {
-                    button.setBackground(CELL_HOVER);
-                }
-            }
-
-            @Override
-            public void mouseExited(MouseEvent e) {
-                if (!board.getCells()[x][y].isRevealed()) {
-                    button.setBackground(CELL_UNREVEALED);
-                }
-            }
-
-            @Override
-            public void mousePressed(MouseEvent e) {
-                if (!gameState.isGameOver() && gameState.isPlayerTurn()) {
-                    if (e.getButton() == MouseEvent.BUTTON1) {
-                        handleLeftClick(x, y);
-                    }
-                }
-            }
-        });
-
-        return button;
-    }
-
     private void handleLeftClick(int x, int y) {
-        Cell cell = board.getCells()[x][y];
-        if (!cell.isRevealed() && gameState.isPlayerTurn()) {
-            System.out.println("\n[Turn Debug] ===== Left Click Started =====");
-            System.out.println("[Turn Debug] Processing left click at (" + x + "," + y + ")");
-            System.out.println("[Turn Debug] Current State - Player: " +
-                (gameState.isHost() ? "Host" : "Client") + ", Turn: " +
-                (gameState.isPlayerTurn() ? "Yes" : "No"));
-
-            // If this is the first click and we're the host, place mines and send positions
-            if (gameState.isHost() && !board.areMinesPlaced()) {
-                board.placeMines(x, y);
-                if (gameState.isMultiplayer()) {
-                    sendMinePositions();
+        if (!board.isRevealed(x, y) && session.isPlayerTurn(localPlayer)) {
+            EventLog.debug("turn.click", "player", localPlayer, "x", x, "y", y);
+
+            // If this is the first click and we own the layout, place mines and send the seed
+            if ((gameState.isHost() || !gameState.isMultiplayer()) && !board.areMinesPlaced()) {
+                session.placeMines(x, y);
+                if (gameState.isMultiplayer() && !isFogOfWarHost()) {
+                    sendBoardSeed();
                 }
-                // Start timer for host's first turn
-                isTimerPaused = false;
-                turnTimer.start();
             }
 
-            // Process the move
-            revealCell(x, y);
-            if (gameState.isMultiplayer() && !gameState.isGameOver()) {
-                System.out.println("[Turn Debug] Sending move to opponent");
+            // A fog-of-war client has no mines to check the move against and
+            // leaves it to the host; everyone else plays it here and sends it
+            // on, except a fog-of-war host whose listener has already sent
+            // what the move uncovered
+            if (isFogOfWarClient()) {
                 sendMove(x, y);
-                System.out.println("[Turn Debug] Toggling turn after sending move");
-                gameState.togglePlayerTurn();
-                updateTurnLabel();
-                isTimerPaused = true;
-                turnTimer.stop();
-            }
-            System.out.println("[Turn Debug] ===== Left Click Completed =====\n");
-        }
-    }
-
-    private void revealCell(int x, int y) {
-        if (gameState.isGameOver()) {
-            return; // Don't reveal cells if game is over
-        }
-
-        Cell cell = board.getCells()[x][y];
-        if (cell.isMine()) {
-            // If player hits a mine, they lose - identify who lost and who won
-            if (gameState.isMultiplayer()) {
-                String loser = gameState.getPlayerName();
-                String winner = gameState.getOpponentName();
-                statusLabel.setText(loser + " hit a mine! " + winner + " wins!");
+                session.submitMove(localPlayer);
             } else {
-                statusLabel.setText("Game Over! You hit a mine!");
+                session.reveal(localPlayer, x, y);
+                if (gameState.isMultiplayer() && !session.isGameOver() && !isFogOfWarHost()) {
+                    sendMove(x, y);
+                }
             }
-            gameOver(false);
-            return;
-        }
-
-        cell.setRevealed(true);
-        updateButtonAppearance(x, y);
-
-        if (cell.getAdjacentMines() == 0) {
-            revealAdjacentCells(x, y);
         }
-
-        checkWinCondition();
     }
 
-    private void revealAdjacentCells(int x, int y) {
-        for (int i = -1; i <= 1; i++) {
-            for (int j = -1; j <= 1; j++) {
-                int newX = x + i;
-                int newY = y + j;
-                if (isValidPosition(newX, newY)) {
-                    Cell adjacentCell = board.getCells()[newX][newY];
-                    if (!adjacentCell.isRevealed() && !adjacentCell.isFlagged()) {
-                        revealCell(newX, newY);
-                    }
-                }
-            }
-        }
+    // In fog-of-war mode only the host's board holds the mines. The host
+    // follows its own setting; a client is in the mode whenever it has been
+    // sent no layout, since BOARD_SEED always precedes the host's first move.
+    private boolean isFogOfWarHost() {
+        return gameState.isMultiplayer() && gameState.isHost() && GameConfig.getInstance().isFogOfWar();
     }
 
-    private boolean isValidPosition(int x, int y) {
-        return x >= 0 && x < board.getSize() && y >= 0 && y < board.getSize();
+    private boolean isFogOfWarClient() {
+        return gameState.isMultiplayer() && !gameState.isHost() && !board.areMinesPlaced();
     }
 
-    private void updateButtonAppearance(int x, int y) {
-        Cell cell = board.getCells()[x][y];
-        JButton button = buttonGrid[x][y];
-
-        if (cell.isRevealed()) {
-            // Revealed cells get sunken appearance
-            Border line = BorderFactory.createLineBorder(GRID_COLOR, 1);
-            Border lowered = BorderFactory.createLoweredBevelBorder();
-            button.setBorder(new CompoundBorder(line, lowered));
-
-            if (cell.isMine()) {
-                // Improved mine appearance
-                button.setText("✹");
-                button.setFont(new Font("Dialog", Font.BOLD, 20));
-                button.setBackground(MINE_COLOR);
-                button.setForeground(Color.WHITE);
-            } else {
-                button.setBackground(CELL_REVEALED);
-                if (cell.getAdjacentMines() > 0) {
-                    button.setText(String.valueOf(cell.getAdjacentMines()));
-                    button.setForeground(getNumberColor(cell.getAdjacentMines()));
-                    button.setFont(new Font("Consolas", Font.BOLD, 20));
-                } else {
-                    button.setText("");
-                }
-            }
-        } else {
-            // Unrevealed cells maintain the raised appearance
-            Border line = BorderFactory.createLineBorder(GRID_COLOR, 1);
-            Border raised = BorderFactory.createRaisedBevelBorder();
-            button.setBorder(new CompoundBorder(line, raised));
-            button.setText("");
-            button.setBackground(CELL_UNREVEALED);
+    // Session events
+
+    @Override
+    public void cellsRevealed(int player, int x, int y, CellIndexList cells) {
+        // The batcher repaints what changed with the next frame
+        for (int i = 0; i < cells.size(); i++) {
+            int index = cells.get(i);
+            updateBatcher.markDirty(board.getX(index), board.getY(index));
+        }
+        updateProgressLabel();
+
+        // A fog-of-war host tells the client what every move uncovered, and
+        // the layout once the game is over. Our own moves hand the client
+        // the turn.
+        if (isFogOfWarHost()) {
+            sendRevealDelta(x, y, player == localPlayer, cells);
         }
     }
 
-    private Color getNumberColor(int number) {
-        switch (number) {
-            case 1: return new Color(30, 144, 255);   // Dodger Blue
-            case 2: return new Color(50, 205, 50);    // Lime Green
-            case 3: return new Color(255, 69, 0);     // Red-Orange
-            case 4: return new Color(138, 43, 226);   // Blue Violet
-            case 5: return new Color(178, 34, 34);    // Firebrick
-            case 6: return new Color(64, 224, 208);   // Turquoise
-            case 7: return new Color(255, 215, 0);    // Gold
-            case 8: return new Color(255, 255, 255);  // White
-            default: return Color.WHITE;
+    @Override
+    public void turnChanged(int player) {
+        EventLog.debug("turn.changed", "player", player, "local", player == localPlayer);
+        updateTurnLabel();
+        if (session.isClockRunning()) {
+            turnTimer.start();
         }
     }
 
-    private void checkWinCondition() {
-        if (gameState.checkWinCondition()) {
-            gameOver(true);
+    @Override
+    public void clockTicked(int player, int secondsRemaining) {
+        if (player == localPlayer) {
+            updateTimerLabel();
         }
     }
 
-    private void gameOver(boolean won) {
-        if (gameState.isGameOver()) {
+    @Override
+    public void gameOver(int winner, GameSession.EndReason reason) {
+        turnTimer.stop();
+        boardView.repaint();
+        boolean won = winner == localPlayer;
+        if (!gameState.isMultiplayer()) {
+            statusLabel.setText(won ? "You Won!" : "Game Over!");
             return;
         }
-        gameState.setGameOver(true);
-        turnTimer.stop();
-        isTimerPaused = true;
-        revealAllMines();
-
-        if (gameState.isMultiplayer()) {
-            if (won) {
-                statusLabel.setText("You Won!");
-            } else {
-                statusLabel.setText("You Lost!");
-            }
-            sendGameOver(won);
+        if (reason == GameSession.EndReason.TIMEOUT) {
+            statusLabel.setText(won ? "You Won! Opponent ran out of time!" : "You Lost! Time's up!");
         } else {
-            statusLabel.setText(won ? "You Won!" : "Game Over!");
+            statusLabel.setText(won ? "You Won!" : "You Lost!");
+        }
+        // Outcomes we worked out ourselves are reported to the opponent
+        if (reason != GameSession.EndReason.REPORTED) {
+            sendGameOver(won);
         }
     }
 
-    private void revealAllMines() {
-        Cell[][] cells = board.getCells();
-        for (int i = 0; i < board.getSize(); i++) {
-            for (int j = 0; j < board.getSize(); j++) {
-                if (cells[i][j].isMine()) {
-                    cells[i][j].setRevealed(true);
-                    updateButtonAppearance(i, j);
-                }
-            }
+    @Override
+    public void sessionReset(Board newBoard) {
+        board = newBoard;
+        // A restored game may be mid-turn with the clock running
+        if (session.isClockRunning()) {
+            turnTimer.start();
+        } else {
+            turnTimer.stop();
         }
+        refreshBoard();
+        statusLabel.setText("Game in progress");
+        updateTurnLabel();
+        updatePlayersLabel();
+        updateTimerLabel();
     }
 
     private void resetGame() {
         if (gameState.isMultiplayer()) {
             sendResetRequest();
         } else {
-            gameState.resetGame();
-            board = gameState.getBoard();
-            updateAllButtons();
-            statusLabel.setText("Game in progress");
-            updateTurnLabel();
+            session.reset();
         }
-        turnTimer.stop();
-        isTimerPaused = true;
-        timeRemaining = TURN_TIME;
-        updateTimerLabel();
     }
 
     private void sendResetRequest() {
@@ -489,115 +346,106 @@ public class GamePage extends JPanel {
             }
         }
 
-        // Reset the game locally after sending the message
-        gameState.resetGame();
-        board = gameState.getBoard();
-        updateAllButtons();
-        statusLabel.setText("Game in progress");
-        updateTurnLabel();
-        updatePlayersLabel();
-
-        // If host, place mines after reset
-        if (gameState.isHost()) {
-            // Mines will be placed on first click
-            System.out.println("Host reset: mines will be placed on first click");
-        }
+        // Reset the game locally after sending the message; if host, mines
+        // will be placed on the first click
+        session.reset();
     }
 
     public void handleMessage(GameMessage message) {
-        System.out.println("\n[Turn Debug] ===== Message Handling Started =====");
-        System.out.println("[Turn Debug] Message Type: " + message.getType());
-        System.out.println("[Turn Debug] Current State - Player: " +
-            (gameState.isHost() ? "Host" : "Client") + ", Turn: " +
-            (gameState.isPlayerTurn() ? "Yes" : "No"));
+        EventLog.debug("turn.message", "type", message.getType(), "current", session.getCurrentPlayer());
 
         switch (message.getType()) {
-            case MINE_POSITIONS:
-                if (!board.areMinesPlaced()) {
-                    board.placeMinesFromPositions(message.getMinePositions());
+            case BOARD_SEED:
+                if (!session.placeMines(message.getLayoutSeed())) {
+                    // Our layout disagrees with the host's hash: ask for the
+                    // host's whole game
+                    EventLog.warn("board.layout_mismatch", "hash", message.getLayoutSeed().layoutHash);
+                    gameState.getClient().sendMessage(new GameMessage(GameMessage.MessageType.LAYOUT_REQUEST));
                 }
                 break;
 
-            case MOVE:
-                System.out.println("[Turn Debug] Received move at (" + message.getX() +
-                    "," + message.getY() + ")");
-
-                if (!gameState.isGameOver()) {
-                    if (!gameState.isHost()) {
-                        System.out.println("[Turn Debug] Client processing host's move");
-                        revealCell(message.getX(), message.getY());
-                        boardPanel.revalidate();
-                        boardPanel.repaint();
-                        gameState.togglePlayerTurn();
-                        updateTurnLabel();
-                        isTimerPaused = false;
-                        turnTimer.start();
-                    } else if (!gameState.isPlayerTurn()) {
-                        System.out.println("[Turn Debug] Host processing client's move");
-                        revealCell(message.getX(), message.getY());
-                        gameState.togglePlayerTurn();
-                        updateTurnLabel();
-                        isTimerPaused = false;
-                        turnTimer.start();
-                    }
+            case LAYOUT_REQUEST:
+                if (gameState.isHost() && board.areMinesPlaced() && !isFogOfWarHost()) {
+                    sendResync();
                 }
                 break;
 
-            case RESET_REQUEST:
-                System.out.println("[Turn Debug] Received reset request from opponent");
-                gameState.resetGame();
-                board = gameState.getBoard();
-                updateAllButtons();
-                statusLabel.setText("Game in progress");
-                updateTurnLabel();
-                updatePlayersLabel();
-                isTimerPaused = true;
-                turnTimer.stop();
-                timeRemaining = TURN_TIME;
-                updateTimerLabel();
+            case RESYNC:
+                // The host's game already includes the moves we skipped
+                // while waiting for it
+                try {
+                    SnapshotCodec.restore(message.getData(), session);
+                } catch (IOException e) {
+                    EventLog.warn("board.resync_failed", e);
+                }
+                break;
 
-                if (!gameState.isHost()) {
-                    System.out.println("[Turn Debug] Client waiting for host to place mines");
+            case REVEAL_DELTA: {
+                // Set for the host's own moves, which hand the turn to us;
+                // otherwise this is the outcome of our move or the layout
+                // shown at the end of the game
+                int player = message.isFlag() ? remotePlayer
+                    : message.getX() < 0 ? GameSession.NO_PLAYER : localPlayer;
+                // applyTo would throw here on the EDT and cost the rest of
+                // this batch of messages
+                if (message.getRevealDelta().getSize() != board.getSize()) {
+                    EventLog.warn("board.delta_size_mismatch", "size", message.getRevealDelta().getSize(),
+                        "boardSize", board.getSize());
+                    break;
                 }
+                session.applyRevealDelta(player, message.getX(), message.getY(),
+                    message.getRevealDelta(), message.isFlag());
+                break;
+            }
+
+            case MOVE:
+                EventLog.debug("turn.remote_move", "player", remotePlayer, "x", message.getX(), "y", message.getY());
+                if (!gameState.isHost() && !board.areMinesPlaced()) {
+                    // Waiting for a RESYNC, which will include this move
+                    break;
+                }
+                // Moves out of turn or after the game has ended are ignored
+                session.reveal(remotePlayer, message.getX(), message.getY());
+                break;
+
+            case RESET_REQUEST:
+                EventLog.debug("turn.reset", "by", remotePlayer);
+                session.reset();
                 break;
 
             case PLAYER_JOINED:
-                System.out.println("[Turn Debug] Received PLAYER_JOINED message from: " + message.getPlayerName());
+                EventLog.info("game.opponent_joined", "name", message.getPlayerName());
                 gameState.setOpponentName(message.getPlayerName());
-                SwingUtilities.invokeLater(() -> {
-                    updatePlayersLabel();
-                    System.out.println("[Turn Debug] Updated players label with opponent name: " + message.getPlayerName());
-                });
+                session.setPlayerName(remotePlayer, message.getPlayerName());
+                SwingUtilities.invokeLater(this::updatePlayersLabel);
 
                 if (gameState.isHost()) {
                     GameMessage hostNameMessage = new GameMessage(GameMessage.MessageType.PLAYER_JOINED, gameState.getPlayerName());
                     gameState.getServer().sendMessage(hostNameMessage);
-                    System.out.println("[Turn Debug] Host sent their name to client: " + gameState.getPlayerName());
                 }
                 break;
 
             case GAME_OVER:
-                gameState.setGameOver(true);
-                revealAllMines();
-                statusLabel.setText(message.isFlag() ? "You Lost!" : "You Won!");
-                isTimerPaused = true;
-                turnTimer.stop();
+                // The flag is set when the sender won
+                session.declareWinner(message.isFlag() ? remotePlayer : localPlayer);
                 break;
 
             case DISCONNECT:
                 statusLabel.setText("Opponent disconnected");
-                isTimerPaused = true;
                 turnTimer.stop();
                 break;
 
             default:
-                System.out.println("[Turn Debug] Unhandled message type: " + message.getType());
+                EventLog.debug("turn.message_ignored", "type", message.getType());
                 break;
         }
-        System.out.println("[Turn Debug] ===== Message Handling Completed =====\n");
     }
 
     private void exitToMenu() {
+        turnTimer.stop();
+        latencyTimer.stop();
+        session.removeListener(this);
+        gameState.stopJournal();
         if (gameState.isMultiplayer()) {
             // Send disconnect message
             sendDisconnect();
@@ -605,17 +453,19 @@ public class GamePage extends JPanel {
         MainFrame.getInstance().navigateTo(MainFrame.HOME_PAGE);
     }
 
-    private void updateAllButtons() {
-        for (int i = 0; i < board.getSize(); i++) {
-            for (int j = 0; j < board.getSize(); j++) {
-                updateButtonAppearance(i, j);
-            }
-        }
+    private void refreshBoard() {
+        boardView.setBoard(board);
+        updateProgressLabel();
+    }
+
+    private void updateProgressLabel() {
+        progressLabel.setText(String.format("MINES LEFT: %d | CLEARED: %d%%",
+            board.getMinesRemaining(), board.getClearedPercent()));
     }
 
     private void updateTurnLabel() {
         if (gameState.isMultiplayer()) {
-            if (gameState.isPlayerTurn()) {
+            if (session.isPlayerTurn(localPlayer)) {
                 turnLabel.setText(">> YOUR TURN <<");
                 turnLabel.setForeground(new Color(100, 255, 100));
             } else {
@@ -631,7 +481,6 @@ public class GamePage extends JPanel {
     private void sendMove(int x, int y) {
         if (gameState.isMultiplayer()) {
             GameMessage moveMessage = new GameMessage(GameMessage.MessageType.MOVE, x, y);
-            System.out.println("Sending move: x=" + x + ", y=" + y);
             if (gameState.isHost()) {
                 gameState.getServer().sendMessage(moveMessage);
             } else {
@@ -682,7 +531,12 @@ public class GamePage extends JPanel {
             String opponentName = gameState.getOpponentName();
 
             if (opponentName != null && !opponentName.isEmpty()) {
-                playersLabel.setText(String.format("YOU: %s | OPPONENT: %s", playerName, opponentName));
+                String text = String.format("YOU: %s | OPPONENT: %s", playerName, opponentName);
+                LatencyStats latency = getLatencyStats();
+                if (latency != null && latency.getSampleCount() > 0) {
+                    text += String.format(" | PING: %d ms", latency.getMedianNanos() / 1_000_000);
+                }
+                playersLabel.setText(text);
             } else {
                 playersLabel.setText(String.format("YOU: %s | WAITING FOR OPPONENT...", playerName));
             }
@@ -693,10 +547,18 @@ public class GamePage extends JPanel {
         }
     }
 
+    private LatencyStats getLatencyStats() {
+        if (gameState.isHost()) {
+            GameServer server = gameState.getServer();
+            return server != null ? server.getLatencyStats() : null;
+        }
+        GameClient client = gameState.getClient();
+        return client != null ? client.getLatencyStats() : null;
+    }
+
     private void sendPlayerJoined() {
         if (gameState.isMultiplayer()) {
             GameMessage message = new GameMessage(GameMessage.MessageType.PLAYER_JOINED, gameState.getPlayerName());
-            System.out.println("[Turn Debug] Sending PLAYER_JOINED message with name: " + gameState.getPlayerName());
             if (gameState.isHost()) {
                 GameServer server = gameState.getServer();
                 if (server != null) {
@@ -711,8 +573,24 @@ public class GamePage extends JPanel {
         }
     }
 
-    private void sendMinePositions() {
-        GameMessage message = new GameMessage(GameMessage.MessageType.MINE_POSITIONS, board.getMinePositions());
+    // The layout is regenerated by the client from these few numbers. If its
+    // hash comes out different the client sends LAYOUT_REQUEST and is
+    // answered with a RESYNC of the whole game.
+    private void sendBoardSeed() {
+        GameMessage message = new GameMessage(GameMessage.MessageType.BOARD_SEED, board.getLayoutSeed());
+        gameState.getServer().sendMessage(message);
+    }
+
+    private void sendRevealDelta(int x, int y, boolean hostMove, CellIndexList cells) {
+        GameServer server = gameState.getServer();
+        if (server != null) {
+            server.sendMessage(new GameMessage(GameMessage.MessageType.REVEAL_DELTA, x, y, hostMove,
+                RevealDelta.capture(board, cells)));
+        }
+    }
+
+    private void sendResync() {
+        GameMessage message = new GameMessage(GameMessage.MessageType.RESYNC, SnapshotCodec.write(session));
         gameState.getServer().sendMessage(message);
     }
 
@@ -751,6 +629,7 @@ public class GamePage extends JPanel {
     }
 
     private void updateTimerLabel() {
+        int timeRemaining = session.getTimeRemaining(localPlayer);
         timerLabel.setText(String.format("TIME: %02d", timeRemaining));
         if (timeRemaining <= 10) {
             timerLabel.setForeground(new Color(255, 80, 80));
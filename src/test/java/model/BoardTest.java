@@ -0,0 +1,111 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class BoardTest {
+    // The layout of a 3x3 board with mines in two corners, shared with the
+    // other model tests:
+    //   * 1 .
+    //   1 2 1
+    //   . 1 *
+    static final List<Board.MinePosition> TWO_CORNERS =
+        Arrays.asList(new Board.MinePosition(0, 0), new Board.MinePosition(2, 2));
+
+    private static Board twoCorners() {
+        Board board = new Board(3, 2);
+        board.placeMinesFromPositions(TWO_CORNERS);
+        return board;
+    }
+
+    @Test
+    void countsAdjacentMines() {
+        Board board = twoCorners();
+        assertEquals(2, board.getMineCount());
+        assertEquals(2, board.getAdjacentMines(1, 1));
+        assertEquals(1, board.getAdjacentMines(0, 1));
+        assertEquals(0, board.getAdjacentMines(0, 2));
+    }
+
+    @Test
+    void countsRevealedAndFlaggedCells() {
+        Board board = twoCorners();
+        assertEquals(7, board.getUnrevealedSafeCount());
+        board.revealCell(1, 1);
+        assertEquals(1, board.getRevealedSafeCount());
+        assertEquals(6, board.getUnrevealedSafeCount());
+
+        board.toggleFlag(0, 0);
+        board.toggleFlag(0, 1);
+        assertEquals(2, board.getFlagCount());
+        assertEquals(1, board.getCorrectFlagCount());
+        assertEquals(0, board.getMinesRemaining());
+        board.toggleFlag(0, 1);
+        assertEquals(1, board.getFlagCount());
+        assertEquals(1, board.getCorrectFlagCount());
+
+        // A revealed cell cannot be flagged
+        board.toggleFlag(1, 1);
+        assertEquals(1, board.getFlagCount());
+    }
+
+    @Test
+    void opensAnEmptyRegion() {
+        Board board = twoCorners();
+        CellIndexList revealed = board.revealCell(0, 2);
+        // The empty corner and its three numbered neighbours
+        assertEquals(4, revealed.size());
+        assertEquals(4, board.getRevealedSafeCount());
+        assertEquals(0, board.revealCell(0, 2).size());
+    }
+
+    @Test
+    void clearedOnceEverySafeCellIsRevealed() {
+        Board board = twoCorners();
+        board.toggleFlag(0, 0);
+        board.revealCell(0, 2);
+        board.revealCell(2, 1);
+        assertFalse(board.isCleared());
+        board.revealCell(1, 0);
+        assertFalse(board.isCleared());
+        // The last safe cell; the mine in the other corner is not flagged
+        board.revealCell(2, 0);
+        assertEquals(0, board.getUnrevealedSafeCount());
+        assertEquals(100, board.getClearedPercent());
+        assertTrue(board.isCleared());
+    }
+
+    @Test
+    void hugeSafeZoneShrinksToFit() {
+        Board board = new Board(10, 20);
+        board.setSafeZoneRadius(Integer.MAX_VALUE);
+        board.placeMines(3L, 9, 9);
+        assertEquals(20, board.getMineCount());
+        assertFalse(board.isMine(9, 9));
+    }
+
+    @Test
+    void sameSeedSameLayout() {
+        Board first = new Board(30, 150);
+        Board second = new Board(30, 150);
+        first.placeMines(99L, 4, 7);
+        second.placeMines(99L, 4, 7);
+        assertEquals(150, first.getMineCount());
+        assertEquals(first.getMinePositions().size(), second.getMinePositions().size());
+        for (int i = 0; i < first.getCellCount(); i++) {
+            assertEquals(first.isMine(i), second.isMine(i));
+        }
+        // The first click and its neighbourhood stay clear
+        for (int x = 3; x <= 5; x++) {
+            for (int y = 6; y <= 8; y++) {
+                assertFalse(first.isMine(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class EndlessBoardTest {
+    private static final int N = EndlessBoard.CHUNK_SIZE;
+    // Far enough from the first chunk that loading it touches nothing else
+    private static final int FAR = 100 * N;
+
+    @Test
+    void sameSeedSameMines() {
+        EndlessBoard first = new EndlessBoard(5L, 0.15);
+        EndlessBoard second = new EndlessBoard(5L, 0.15, 1);
+        for (int x = -N; x < 2 * N; x += 3) {
+            for (int y = -N; y < 2 * N; y += 5) {
+                assertEquals(first.isMine(x, y), second.isMine(x, y));
+                assertEquals(first.getAdjacentMines(x, y), second.getAdjacentMines(x, y));
+            }
+        }
+        // The start is always safe
+        assertFalse(first.isMine(0, 0));
+        assertEquals(0, first.getAdjacentMines(0, 0));
+    }
+
+    @Test
+    void evictsUntouchedChunks() {
+        EndlessBoard board = new EndlessBoard(5L, 0.15, 2);
+        board.ensureLoaded(0, 0, 4 * N - 1, N - 1);
+        assertEquals(2, board.getLoadedChunkCount());
+        assertTrue(board.isLoaded(3 * N, 0));
+        assertFalse(board.isLoaded(0, 0));
+    }
+
+    @Test
+    void keepsTouchedChunks() {
+        EndlessBoard board = new EndlessBoard(5L, 0.15, 1);
+        board.toggleFlag(3, 3);
+        board.isMine(FAR, FAR);
+        assertTrue(board.isLoaded(3, 3));
+        assertTrue(board.isFlagged(3, 3));
+    }
+
+    @Test
+    void resolvedChunkComesBackAsItWasLeft() {
+        EndlessBoard board = new EndlessBoard(9L, 0.1, 1);
+        // Resolve the first chunk, hitting one mine and flagging another
+        int hit = -1;
+        int flagged = -1;
+        for (int x = 0; x < N; x++) {
+            for (int y = 0; y < N; y++) {
+                if (!board.isMine(x, y)) {
+                    board.revealCell(x, y);
+                } else if (hit < 0) {
+                    hit = x * N + y;
+                    board.revealCell(x, y);
+                } else if (flagged < 0) {
+                    flagged = x * N + y;
+                    board.toggleFlag(x, y);
+                }
+            }
+        }
+        assertTrue(flagged >= 0);
+        assertEquals(1, board.getResolvedChunkCount());
+        boolean[][] revealed = new boolean[N][N];
+        boolean[][] flags = new boolean[N][N];
+        for (int x = 0; x < N; x++) {
+            for (int y = 0; y < N; y++) {
+                revealed[x][y] = board.isRevealed(x, y);
+                flags[x][y] = board.isFlagged(x, y);
+            }
+        }
+
+        board.isMine(FAR, FAR);
+        assertFalse(board.isLoaded(0, 0));
+        for (int x = 0; x < N; x++) {
+            for (int y = 0; y < N; y++) {
+                assertEquals(revealed[x][y], board.isRevealed(x, y), "revealed " + x + "," + y);
+                assertEquals(flags[x][y], board.isFlagged(x, y), "flagged " + x + "," + y);
+            }
+        }
+        assertTrue(board.isRevealed(hit / N, hit % N));
+        assertTrue(board.isFlagged(flagged / N, flagged % N));
+        // Every other mine is still hidden
+        int hidden = 0;
+        for (int x = 0; x < N; x++) {
+            for (int y = 0; y < N; y++) {
+                if (board.isMine(x, y) && !board.isRevealed(x, y) && !board.isFlagged(x, y)) {
+                    hidden++;
+                }
+            }
+        }
+        assertTrue(hidden > 0);
+        assertEquals(1, board.getResolvedChunkCount());
+    }
+}
@@ -0,0 +1,87 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class GameSessionTest {
+    // Records how the game ended
+    private static final class Outcome implements GameSession.Listener {
+        int winner = Integer.MIN_VALUE;
+        GameSession.EndReason reason;
+
+        @Override
+        public void gameOver(int winner, GameSession.EndReason reason) {
+            this.winner = winner;
+            this.reason = reason;
+        }
+    }
+
+    // Two players on BoardTest's board with mines in two corners
+    private static GameSession twoCorners(Outcome outcome) {
+        GameSession session = new GameSession(2, 3, 2, 30);
+        session.addListener(outcome);
+        session.placeMinesFromPositions(BoardTest.TWO_CORNERS);
+        return session;
+    }
+
+    @Test
+    void uncoveringTheLastSafeCellWins() {
+        Outcome outcome = new Outcome();
+        GameSession session = twoCorners(outcome);
+        // Opens the top right corner and its neighbours
+        assertTrue(session.reveal(0, 0, 2));
+        assertFalse(session.isGameOver());
+        assertEquals(1, session.getCurrentPlayer());
+        // Opens the bottom left corner and the rest; no mine is flagged
+        assertTrue(session.reveal(1, 2, 0));
+        assertTrue(session.isGameOver());
+        assertEquals(1, session.getWinner());
+        assertEquals(1, outcome.winner);
+        assertEquals(GameSession.EndReason.CLEARED, outcome.reason);
+        assertEquals(0, session.getBoard().getFlagCount());
+        // The mines are uncovered at the end
+        assertTrue(session.getBoard().isRevealed(0, 0));
+        assertTrue(session.getBoard().isRevealed(2, 2));
+    }
+
+    @Test
+    void flagsDoNotChangeTheWin() {
+        Outcome outcome = new Outcome();
+        GameSession session = twoCorners(outcome);
+        assertTrue(session.toggleFlag(0, 0, 0));
+        assertTrue(session.toggleFlag(0, 1, 0));
+        assertTrue(session.reveal(0, 0, 2));
+        // The opening stops at the flag
+        assertTrue(session.reveal(1, 2, 0));
+        assertFalse(session.isGameOver());
+        // The wrongly flagged cell is the last one left, and the right flag
+        // stays down
+        assertTrue(session.toggleFlag(0, 1, 0));
+        assertTrue(session.reveal(0, 1, 0));
+        assertEquals(0, outcome.winner);
+        assertEquals(GameSession.EndReason.CLEARED, outcome.reason);
+    }
+
+    @Test
+    void aMineLosesTheGame() {
+        Outcome outcome = new Outcome();
+        GameSession session = twoCorners(outcome);
+        assertTrue(session.reveal(0, 1, 1));
+        assertTrue(session.reveal(1, 2, 2));
+        assertTrue(session.isGameOver());
+        assertEquals(0, outcome.winner);
+        assertEquals(GameSession.EndReason.MINE, outcome.reason);
+    }
+
+    @Test
+    void rejectsMovesOutOfTurn() {
+        GameSession session = twoCorners(new Outcome());
+        assertFalse(session.reveal(1, 1, 1));
+        assertTrue(session.reveal(0, 1, 1));
+        assertFalse(session.reveal(0, 1, 2));
+        assertFalse(session.reveal(1, 1, 1));
+    }
+}
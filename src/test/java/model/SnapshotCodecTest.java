@@ -0,0 +1,189 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class SnapshotCodecTest {
+    // Offsets into the header of a small uncompressed snapshot, where
+    // every varint takes one byte
+    private static final int SIZE = 6;
+    private static final int MINES = 7;
+    private static final int FIRST_NAME = 10;
+
+    // A two-player 3x3 game a move in, with a flag down
+    private static GameSession smallGame() {
+        GameSession session = new GameSession(2, 3, 2, 30);
+        session.setPlayerName(0, "Ann");
+        session.placeMinesFromPositions(BoardTest.TWO_CORNERS);
+        session.reveal(0, 1, 1);
+        session.toggleFlag(1, 0, 0);
+        return session;
+    }
+
+    private static void assertSameGame(GameSession expected, GameSession actual) {
+        Board board = expected.getBoard();
+        Board copy = actual.getBoard();
+        assertEquals(board.getSize(), copy.getSize());
+        for (int i = 0; i < board.getCellCount(); i++) {
+            assertEquals(board.isMine(i), copy.isMine(i), "mine " + i);
+            assertEquals(board.isRevealed(i), copy.isRevealed(i), "revealed " + i);
+            assertEquals(board.isFlagged(i), copy.isFlagged(i), "flagged " + i);
+            if (board.isRevealed(i)) {
+                assertEquals(board.getAdjacentMines(i), copy.getAdjacentMines(i), "count " + i);
+            }
+        }
+        assertEquals(board.getRevealedSafeCount(), copy.getRevealedSafeCount());
+        assertEquals(board.getFlagCount(), copy.getFlagCount());
+        assertEquals(board.getCorrectFlagCount(), copy.getCorrectFlagCount());
+        assertEquals(board.areMinesPlaced(), copy.areMinesPlaced());
+        assertEquals(expected.getPlayerCount(), actual.getPlayerCount());
+        for (int i = 0; i < expected.getPlayerCount(); i++) {
+            assertEquals(expected.getPlayerName(i), actual.getPlayerName(i));
+            assertEquals(expected.getTimeRemaining(i), actual.getTimeRemaining(i));
+        }
+        assertEquals(expected.getCurrentPlayer(), actual.getCurrentPlayer());
+        assertEquals(expected.getWinner(), actual.getWinner());
+        assertEquals(expected.isGameOver(), actual.isGameOver());
+        assertEquals(expected.isClockRunning(), actual.isClockRunning());
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        GameSession session = smallGame();
+        assertSameGame(session, SnapshotCodec.read(SnapshotCodec.write(session, false)));
+        assertSameGame(session, SnapshotCodec.read(SnapshotCodec.write(session, true)));
+    }
+
+    @Test
+    void roundTripLargeBoard() throws IOException {
+        GameSession session = new GameSession(2, 200, 4000, 30);
+        session.placeMines(100, 100);
+        session.reveal(0, 100, 100);
+        assertSameGame(session, SnapshotCodec.read(SnapshotCodec.write(session)));
+    }
+
+    @Test
+    void roundTripWithoutLayout() throws IOException {
+        // A fog-of-war client knows only the revealed cells
+        GameSession host = smallGame();
+        GameSession client = new GameSession(2, 3, 2, 30);
+        CellIndexList cells = new CellIndexList();
+        for (int i = 0; i < host.getBoard().getCellCount(); i++) {
+            if (host.getBoard().isRevealed(i)) {
+                cells.add(i);
+            }
+        }
+        client.applyRevealDelta(0, 1, 1, RevealDelta.capture(host.getBoard(), cells), true);
+        assertSameGame(client, SnapshotCodec.read(SnapshotCodec.write(client, false)));
+    }
+
+    @Test
+    void restoreKeepsTheSession() throws IOException {
+        GameSession session = new GameSession(2, 3, 2, 30);
+        SnapshotCodec.restore(SnapshotCodec.write(smallGame(), true), session);
+        assertSameGame(smallGame(), session);
+        GameSession solo = new GameSession(1, 3, 2, 30);
+        assertThrows(IOException.class, () -> SnapshotCodec.restore(SnapshotCodec.write(smallGame()), solo));
+        GameSession larger = new GameSession(2, 4, 2, 30);
+        assertThrows(IOException.class, () -> SnapshotCodec.restore(SnapshotCodec.write(smallGame()), larger));
+        GameSession denser = new GameSession(2, 3, 3, 30);
+        assertThrows(IOException.class, () -> SnapshotCodec.restore(SnapshotCodec.write(smallGame()), denser));
+    }
+
+    @Test
+    void rejectsBodyLargerThanTheData() {
+        // A header claiming the largest board, 32767x32767 in 3 planes of
+        // 134201345 bytes, with a few bytes behind it
+        byte[] data = SnapshotCodec.write(smallGame(), false);
+        ByteBuffer huge = ByteBuffer.allocate(64);
+        huge.put(data, 0, SIZE);
+        for (int field : new int[] {32767, 0, 30, 1, 0, 30, 0, 1, 0}) {
+            putVarint(huge, field);
+        }
+        putVarint(huge, 3 * 134201345);
+        huge.put(new byte[8]);
+        byte[] bytes = Arrays.copyOf(huge.array(), huge.position());
+        assertThrows(IOException.class, () -> SnapshotCodec.read(bytes));
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static byte[] corrupt(int offset, int value) {
+        byte[] data = SnapshotCodec.write(smallGame(), false);
+        data[offset] = (byte) value;
+        return data;
+    }
+
+    @Test
+    void rejectsTruncatedSnapshots() {
+        byte[] data = SnapshotCodec.write(smallGame(), false);
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IOException.class, () -> SnapshotCodec.read(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsBadHeaderFields() {
+        assertThrows(IOException.class, () -> SnapshotCodec.read(corrupt(0, 0)));
+        assertThrows(IOException.class, () -> SnapshotCodec.read(corrupt(SIZE, 0)));
+        assertThrows(IOException.class, () -> SnapshotCodec.read(corrupt(SIZE, 5)));
+        assertThrows(IOException.class, () -> SnapshotCodec.read(corrupt(MINES, 10)));
+        assertThrows(IOException.class, () -> SnapshotCodec.read(corrupt(FIRST_NAME, 0x7F)));
+    }
+
+    @Test
+    void rejectsNegativeSize() {
+        byte[] data = SnapshotCodec.write(smallGame(), false);
+        byte[] negative = new byte[data.length + 4];
+        System.arraycopy(data, 0, negative, 0, SIZE);
+        System.arraycopy(new byte[] {-1, -1, -1, -1, 0x0F}, 0, negative, SIZE, 5);
+        System.arraycopy(data, SIZE + 1, negative, SIZE + 5, data.length - SIZE - 1);
+        assertThrows(IOException.class, () -> SnapshotCodec.read(negative));
+    }
+
+    @Test
+    void rejectsPlayersOutOfRange() {
+        byte[] data = SnapshotCodec.write(smallGame(), false);
+        // Current player, winner and state sit before the body length
+        // and the 6-byte body
+        int currentPlayer = data.length - 6 - 1 - 3;
+        data[currentPlayer] = 4;
+        assertThrows(IOException.class, () -> SnapshotCodec.read(data));
+        data[currentPlayer] = 2;
+        data[currentPlayer + 1] = 6;
+        assertThrows(IOException.class, () -> SnapshotCodec.read(data));
+    }
+
+    @Test
+    void rejectsBitsPastTheBoard() {
+        byte[] data = SnapshotCodec.write(smallGame(), false);
+        int body = data.length - 6;
+        // Bit 15 of each plane is the seventh past the last of 9 cells
+        for (int plane = 0; plane < 3; plane++) {
+            byte[] padded = data.clone();
+            padded[body + 2 * plane + 1] |= (byte) 0x80;
+            assertThrows(IOException.class, () -> SnapshotCodec.read(padded), "plane " + plane);
+        }
+    }
+
+    @Test
+    void rejectsMineCountMismatch() {
+        byte[] data = SnapshotCodec.write(smallGame(), false);
+        int body = data.length - 6;
+        data[body] |= 0x02;
+        assertThrows(IOException.class, () -> SnapshotCodec.read(data));
+    }
+}
@@ -0,0 +1,187 @@
+package network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import model.Board;
+import model.Board.MinePosition;
+import model.CellIndexList;
+import model.RevealDelta;
+
+class MessageCodecTest {
+    private static GameMessage roundTrip(GameMessage message) throws IOException {
+        ByteBuffer frame = MessageCodec.encodeFrame(message);
+        assertEquals(MessageCodec.frameLength(message), frame.remaining());
+        assertEquals(frame.remaining(), MessageCodec.completeFrameLength(frame));
+        GameMessage decoded = MessageCodec.decodeFrame(frame);
+        assertEquals(0, frame.remaining());
+        assertEquals(message.getType(), decoded.getType());
+        assertEquals(message.getNumber(), decoded.getNumber());
+        return decoded;
+    }
+
+    // A frame of the given body bytes behind a one-byte length prefix
+    private static ByteBuffer frame(int... body) {
+        ByteBuffer frame = ByteBuffer.allocate(body.length + 1);
+        frame.put((byte) body.length);
+        for (int b : body) {
+            frame.put((byte) b);
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private static void assertMalformed(int... body) {
+        assertThrows(IOException.class, () -> MessageCodec.decodeFrame(frame(body)));
+    }
+
+    @Test
+    void moveRoundTrip() throws IOException {
+        GameMessage decoded = roundTrip(new GameMessage(GameMessage.MessageType.MOVE, 3, -1, true));
+        assertEquals(3, decoded.getX());
+        assertEquals(-1, decoded.getY());
+        assertEquals(true, decoded.isFlag());
+    }
+
+    @Test
+    void stringRoundTrip() throws IOException {
+        assertEquals("Zoë", roundTrip(new GameMessage(GameMessage.MessageType.PLAYER_JOINED, "Zoë")).getText());
+        assertNull(roundTrip(new GameMessage(GameMessage.MessageType.PLAYER_JOINED, (String) null)).getText());
+    }
+
+    @Test
+    void layoutRoundTrip() throws IOException {
+        // A sparse layout goes as indices, a dense one as a bitmap
+        for (int mines : new int[] {3, 60}) {
+            Board board = new Board(10, mines);
+            board.placeMines(42L, 5, 5);
+            List<MinePosition> positions = board.getMinePositions();
+            GameMessage decoded = roundTrip(new GameMessage(GameMessage.MessageType.MINE_POSITIONS, positions));
+            assertEquals(positions.size(), decoded.getMinePositions().size());
+            for (int i = 0; i < positions.size(); i++) {
+                assertEquals(positions.get(i).x, decoded.getMinePositions().get(i).x);
+                assertEquals(positions.get(i).y, decoded.getMinePositions().get(i).y);
+            }
+        }
+    }
+
+    @Test
+    void revealDeltaRoundTrip() throws IOException {
+        Board board = new Board(16, 40);
+        board.placeMines(7L, 8, 8);
+        CellIndexList opening = board.revealCell(8, 8);
+        RevealDelta delta = RevealDelta.capture(board, opening);
+        GameMessage decoded = roundTrip(new GameMessage(GameMessage.MessageType.REVEAL_DELTA, 8, 8, false, delta));
+        RevealDelta copy = decoded.getRevealDelta();
+        assertEquals(delta.getSize(), copy.getSize());
+        assertEquals(delta.getCellCount(), copy.getCellCount());
+        for (int i = 0; i < delta.getCellCount(); i++) {
+            assertEquals(delta.getCell(i), copy.getCell(i));
+            assertEquals(delta.getValue(i), copy.getValue(i));
+        }
+    }
+
+    @Test
+    void sessionMessagesRoundTrip() throws IOException {
+        GameMessage resume = roundTrip(new GameMessage(GameMessage.MessageType.RESUME, "token", 12345678901L));
+        assertEquals("token", resume.getText());
+        assertEquals(12345678901L, resume.getSequence());
+        assertEquals(-5L, roundTrip(new GameMessage(GameMessage.MessageType.PING, -5L)).getTimestamp());
+        byte[] data = {1, 2, 3, 0, -1};
+        assertArrayEquals(data, roundTrip(new GameMessage(GameMessage.MessageType.RESYNC, data)).getData());
+    }
+
+    @Test
+    void numberRoundTrip() throws IOException {
+        GameMessage move = new GameMessage(GameMessage.MessageType.MOVE, 1, 2, false);
+        assertEquals(1L << 40, roundTrip(move.withNumber(1L << 40)).getNumber());
+        assertEquals(0, roundTrip(move).getNumber());
+    }
+
+    @Test
+    void rejectsUnknownType() {
+        assertMalformed(0x7F);
+    }
+
+    @Test
+    void rejectsTruncatedBody() {
+        // MOVE with its coordinates but no flag byte
+        assertMalformed(0, 2, 4);
+    }
+
+    @Test
+    void rejectsZeroNumber() {
+        assertMalformed(0x80, 0, 2, 4, 0);
+    }
+
+    @Test
+    void rejectsStringLongerThanFrame() {
+        assertMalformed(4, 0x7F, 'a');
+    }
+
+    @Test
+    void rejectsNegativeStringLength() {
+        assertMalformed(4, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F);
+    }
+
+    @Test
+    void rejectsResyncLongerThanFrame() {
+        assertMalformed(18, 100, 1, 2);
+    }
+
+    @Test
+    void rejectsLayoutWithMoreMinesThanCells() {
+        assertMalformed(5, 3, 100, 0, 0, 0, 0);
+    }
+
+    @Test
+    void rejectsLayoutMineOffTheBoard() {
+        // Two mines on a 2x2 board as indices: 0, then a gap of 9
+        assertMalformed(5, 2, 2, 0, 0, 9);
+    }
+
+    @Test
+    void rejectsRevealedCountAboveEight() {
+        for (int value : new int[] {10, 15}) {
+            RevealDelta delta = new RevealDelta(3, new int[] {4}, new byte[] {(byte) value});
+            ByteBuffer frame = MessageCodec.encodeFrame(
+                new GameMessage(GameMessage.MessageType.REVEAL_DELTA, 1, 1, false, delta));
+            assertThrows(IOException.class, () -> MessageCodec.decodeFrame(frame), "value " + value);
+        }
+    }
+
+    @Test
+    void rejectsSafeZoneWiderThanTheBoard() {
+        Board.LayoutSeed layout = new Board.LayoutSeed(1L, 10, 5, Integer.MAX_VALUE, 2, 3, 0L);
+        ByteBuffer frame = MessageCodec.encodeFrame(new GameMessage(GameMessage.MessageType.BOARD_SEED, layout));
+        assertThrows(IOException.class, () -> MessageCodec.decodeFrame(frame));
+    }
+
+    @Test
+    void streamTellsEndFromNegativeLength() throws IOException {
+        MessageCodec codec = new MessageCodec();
+        assertNull(codec.readMessage(new ByteArrayInputStream(new byte[0])));
+        byte[] negative = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+        assertThrows(IOException.class, () -> codec.readMessage(new ByteArrayInputStream(negative)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.writeMessage(new GameMessage(GameMessage.MessageType.MOVE, 1, 2, false), out);
+        assertEquals(1, codec.readMessage(new ByteArrayInputStream(out.toByteArray())).getX());
+    }
+
+    @Test
+    void rejectsInvalidFrameLength() {
+        assertThrows(IOException.class, () -> MessageCodec.completeFrameLength(frame()));
+        ByteBuffer huge = ByteBuffer.wrap(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+        assertThrows(IOException.class, () -> MessageCodec.completeFrameLength(huge));
+    }
+}
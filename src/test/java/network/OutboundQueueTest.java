@@ -0,0 +1,20 @@
+package network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class OutboundQueueTest {
+    @Test
+    void parsesPolicyNames() {
+        assertEquals(OutboundQueue.OverflowPolicy.DROP_OLDEST, OutboundQueue.OverflowPolicy.parse("DROP_OLDEST"));
+        assertEquals(OutboundQueue.OverflowPolicy.BLOCK, OutboundQueue.OverflowPolicy.parse(" block "));
+    }
+
+    @Test
+    void mistypedPolicyFallsBackToDisconnect() {
+        assertEquals(OutboundQueue.OverflowPolicy.DISCONNECT, OutboundQueue.OverflowPolicy.parse("DROP_OLDES"));
+        assertEquals(OutboundQueue.OverflowPolicy.DISCONNECT, OutboundQueue.OverflowPolicy.parse(""));
+        assertEquals(OutboundQueue.OverflowPolicy.DISCONNECT, OutboundQueue.OverflowPolicy.parse(null));
+    }
+}
@@ -0,0 +1,84 @@
+package network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ResumableSessionTest {
+    private static GameMessage move(int x) {
+        return new GameMessage(GameMessage.MessageType.MOVE, x, 0, false);
+    }
+
+    @Test
+    void numbersSentMessages() {
+        ResumableSession session = new ResumableSession("t");
+        assertEquals(1, session.recordSent(move(0)).getNumber());
+        assertEquals(2, session.recordSent(move(1)).getNumber());
+        assertEquals(2, session.getSentSequence());
+    }
+
+    @Test
+    void replaysWhatThePeerMissed() {
+        ResumableSession session = new ResumableSession("t");
+        for (int i = 0; i < 5; i++) {
+            session.recordSent(move(i));
+        }
+        List<GameMessage> missed = session.sentAfter(2);
+        assertEquals(3, missed.size());
+        for (int i = 0; i < missed.size(); i++) {
+            assertEquals(3 + i, missed.get(i).getNumber());
+            assertEquals(2 + i, missed.get(i).getX());
+        }
+        assertTrue(session.sentAfter(5).isEmpty());
+    }
+
+    @Test
+    void replayWindowHoldsTheLastCapacityMessages() {
+        ResumableSession session = new ResumableSession("t");
+        int sent = ResumableSession.REPLAY_CAPACITY + 10;
+        for (int i = 0; i < sent; i++) {
+            session.recordSent(move(i));
+        }
+        assertTrue(session.canResumeFrom(sent));
+        assertTrue(session.canResumeFrom(10));
+        assertFalse(session.canResumeFrom(9));
+        assertFalse(session.canResumeFrom(sent + 1));
+        assertFalse(session.canResumeFrom(-1));
+        List<GameMessage> missed = session.sentAfter(10);
+        assertEquals(ResumableSession.REPLAY_CAPACITY, missed.size());
+        assertEquals(11, missed.get(0).getNumber());
+        assertEquals(sent, missed.get(missed.size() - 1).getNumber());
+    }
+
+    @Test
+    void dropsDuplicates() throws IOException {
+        ResumableSession session = new ResumableSession("t");
+        assertTrue(session.recordReceived(move(0).withNumber(1)));
+        assertTrue(session.recordReceived(move(1).withNumber(2)));
+        assertFalse(session.recordReceived(move(0).withNumber(1)));
+        assertFalse(session.recordReceived(move(1).withNumber(2)));
+        assertEquals(2, session.getReceivedSequence());
+        assertTrue(session.recordReceived(move(2).withNumber(3)));
+    }
+
+    @Test
+    void failsOnAGap() throws IOException {
+        ResumableSession session = new ResumableSession("t");
+        assertTrue(session.recordReceived(move(0).withNumber(1)));
+        assertThrows(IOException.class, () -> session.recordReceived(move(2).withNumber(3)));
+        assertEquals(1, session.getReceivedSequence());
+    }
+
+    @Test
+    void takesUnnumberedMessages() throws IOException {
+        ResumableSession session = new ResumableSession("t");
+        assertTrue(session.recordReceived(move(0)));
+        assertEquals(0, session.getReceivedSequence());
+    }
+}